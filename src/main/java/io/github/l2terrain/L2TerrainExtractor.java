@@ -1,15 +1,26 @@
 package io.github.l2terrain;
 
+import io.github.l2terrain.cache.TerrainCacheSnapshot;
+import io.github.l2terrain.cache.TextureIndex;
+import io.github.l2terrain.crypto.DecryptedPackageCache;
 import io.github.l2terrain.extractors.DetailMapExtractor;
-import io.github.l2terrain.extractors.HeightmapExtractor;
+import io.github.l2terrain.extractors.DetailMapExtractor.DetailMap;
 import io.github.l2terrain.extractors.MetadataExtractor;
 import io.github.l2terrain.extractors.MetadataExtractor.TileMetadata;
-import io.github.l2terrain.extractors.SplatmapExtractor;
-import io.github.l2terrain.extractors.SplatmapExtractor.SplatmapInfo;
+import io.github.l2terrain.extractors.SplatmapExtractor.SplatmapSink;
 import io.github.l2terrain.extractors.StaticMeshExtractor;
 import io.github.l2terrain.extractors.TerrainTextureExtractor;
 import io.github.l2terrain.extractors.TerrainTextureExtractor.TextureInfo;
+import io.github.l2terrain.extractors.TilePackageExtractor;
+import io.github.l2terrain.model.CompressedTexture;
+import io.github.l2terrain.model.ExtractionManifest;
 import io.github.l2terrain.model.TerrainTile;
+import io.github.l2terrain.utils.ContentDeduplicator;
+import io.github.l2terrain.utils.DdsWriter;
+import io.github.l2terrain.utils.HeightmapWriter;
+import io.github.l2terrain.utils.ParallelExecutor;
+import io.github.l2terrain.utils.TextureUtils;
+import io.github.l2terrain.utils.UnrealPackageUtils;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -18,8 +29,6 @@ import picocli.CommandLine.Parameters;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashSet;
@@ -27,6 +36,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * L2TerrainExtractor - Extract terrain data from Lineage 2 packages
@@ -42,6 +52,9 @@ import java.util.concurrent.Callable;
 )
 public class L2TerrainExtractor implements Callable<Integer> {
     
+    /** Output format for splatmaps, detail maps and terrain textures */
+    enum TextureFormat { PNG, DDS }
+    
     @Parameters(index = "0", description = "Input directory containing .utx terrain packages (T_XX_YY.utx)")
     private Path inputDir;
     
@@ -72,8 +85,52 @@ public class L2TerrainExtractor implements Callable<Integer> {
     @Option(names = {"--static-meshes"}, description = "Extract static mesh placements to staticmeshes.json")
     private boolean extractStaticMeshes = false;
     
+    @Option(names = {"--decrypt-to-temp"}, description = "Decrypt packages to temp files instead of decrypting on read")
+    private boolean decryptToTemp = false;
+    
+    @Option(names = {"--cache-dir"}, description = "Keep decrypted packages in this directory and reuse them in later runs")
+    private Path cacheDir;
+    
+    @Option(names = {"--cache-size"}, description = "Size cap of the decrypted-package cache in MB; least recently used packages are evicted (default: 4096)")
+    private long cacheSizeMb = 4096;
+    
+    @Option(names = {"--mmap"}, description = "Memory-map cached packages instead of reading them through a small buffer; requires --cache-dir")
+    private boolean memoryMapped = false;
+    
+    @Option(names = {"--parallel-decode"}, description = "Split large DXT textures into row bands decoded on all processors")
+    private boolean parallelDecode = false;
+    
+    @Option(names = {"--format"}, description = "Texture output format: PNG or DDS. DDS keeps DXT textures compressed with all mip levels; other formats are still written as PNG (default: PNG)")
+    private TextureFormat textureFormat = TextureFormat.PNG;
+    
+    @Option(names = {"--dedup"}, description = "Hash splatmaps, detail maps and terrain textures before decoding, and hard-link textures whose content was already extracted instead of decoding and writing them again")
+    private boolean dedup = false;
+    
+    @Option(names = {"--mip-level"}, description = "Decode this mip level of splatmaps, detail maps and terrain textures instead of full size, for previews (default: 0)")
+    private int mipLevel = 0;
+    
+    @Option(names = {"--max-size"}, description = "Decode the largest mip level of splatmaps, detail maps and terrain textures that fits within this many pixels, for previews (default: no limit)")
+    private int maxSize = 0;
+    
+    @Option(names = {"-t", "--threads"}, description = "Number of packages to process in parallel (default: number of processors)")
+    private int threads = ParallelExecutor.defaultThreads();
+    
+    /** Set when static meshes are collected during the metadata map pass */
+    private StaticMeshExtractor staticMeshExtractor;
+    
+    /** Files written by the heightmap, splatmap and detail map stages */
+    private final ExtractionManifest manifest = new ExtractionManifest();
+    
+    /** Set with --dedup, shared by all texture stages */
+    private ContentDeduplicator deduplicator;
+    
+    /** Set when metadata is generated in this run */
+    private List<TileMetadata> tileMetadata;
+    
     public static void main(String[] args) {
-        int exitCode = new CommandLine(new L2TerrainExtractor()).execute(args);
+        int exitCode = new CommandLine(new L2TerrainExtractor())
+            .setCaseInsensitiveEnumValuesAllowed(true)
+            .execute(args);
         System.exit(exitCode);
     }
     
@@ -85,25 +142,41 @@ public class L2TerrainExtractor implements Callable<Integer> {
             return 1;
         }
         
+        if (threads < 1) {
+            System.err.println("Error: --threads must be at least 1");
+            return 1;
+        }
+        
+        if (mipLevel < 0 || maxSize < 0) {
+            System.err.println("Error: --mip-level and --max-size must not be negative");
+            return 1;
+        }
+        
         // Create output directory if needed
         Files.createDirectories(outputDir);
         
+        if (memoryMapped && cacheDir == null) {
+            System.err.println("Warning: --mmap requires --cache-dir and is ignored");
+        }
+        
+        UnrealPackageUtils.setDecryptToTempFile(decryptToTemp);
+        UnrealPackageUtils.setMemoryMapped(memoryMapped);
+        if (cacheDir != null) {
+            UnrealPackageUtils.setDecryptedCache(new DecryptedPackageCache(cacheDir, cacheSizeMb * 1024 * 1024));
+        }
+        TextureUtils.setParallelDecode(parallelDecode);
+        if (dedup) {
+            deduplicator = new ContentDeduplicator();
+        }
+        
         int totalSuccess = 0;
         int totalFailed = 0;
         
-        // Extract heightmaps
-        System.out.println("=== Extracting Heightmaps ===");
-        int[] heightmapResults = extractHeightmaps();
-        totalSuccess += heightmapResults[0];
-        totalFailed += heightmapResults[1];
-        
-        // Extract splatmaps (from same T_XX_YY.utx packages)
-        if (!skipSplatmaps) {
-            System.out.println("\n=== Extracting Splatmaps ===");
-            int[] splatResults = extractSplatmaps();
-            totalSuccess += splatResults[0];
-            totalFailed += splatResults[1];
-        }
+        // Extract heightmaps and splatmaps (one pass over the T_XX_YY.utx packages)
+        System.out.println(skipSplatmaps ? "=== Extracting Heightmaps ===" : "=== Extracting Heightmaps and Splatmaps ===");
+        int[] tileResults = extractTilePackages();
+        totalSuccess += tileResults[0];
+        totalFailed += tileResults[1];
         
         // Extract detail maps if directory provided
         if (detailMapsDir != null) {
@@ -146,93 +219,125 @@ public class L2TerrainExtractor implements Callable<Integer> {
         return totalFailed > 0 && totalSuccess == 0 ? 1 : 0;
     }
     
-    private int[] extractHeightmaps() throws IOException {
-        // Find matching files
+    private int[] extractTilePackages() throws IOException {
+        if (!skipSplatmaps) manifest.beginSplatmaps();
+        
+        // Heightmaps come from files matching the pattern, splatmaps from all T_XX_YY.utx packages
         List<Path> files;
         try (var stream = Files.walk(inputDir, 1)) {
             files = stream
                 .filter(Files::isRegularFile)
-                .filter(p -> matchesPattern(p.getFileName().toString()))
+                .filter(p -> isHeightmapSource(p) || isSplatmapSource(p))
                 .sorted()
                 .toList();
         }
         
-        if (files.isEmpty()) {
+        if (files.stream().noneMatch(this::isHeightmapSource)) {
             System.err.println("No files matching pattern '" + pattern + "' found in " + inputDir);
-            return new int[]{0, 0};
+            if (files.isEmpty()) return new int[]{0, 0};
         }
         
         System.out.printf("Found %d terrain files%n", files.size());
         
-        HeightmapExtractor extractor = new HeightmapExtractor();
-        
-        int success = 0;
-        int failed = 0;
-        
-        for (Path file : files) {
-            try {
-                TerrainTile tile = extractor.extract(file);
-                
-                // Create tile subdirectory: extracted/XX_YY/
-                String tileDirName = String.format("%d_%d", tile.getX(), tile.getY());
-                Path tileDir = outputDir.resolve(tileDirName);
-                Files.createDirectories(tileDir);
-                
-                // Generate output filenames: XX_YY_heightmap.png and XX_YY_heightmap.raw
-                String baseName = String.format("%d_%d_heightmap", tile.getX(), tile.getY());
-                Path pngPath = tileDir.resolve(baseName + ".png");
-                Path rawPath = tileDir.resolve(baseName + ".raw");
-                
-                writePng(tile, pngPath);
-                writeRaw(tile, rawPath);
+        TilePackageExtractor extractor = new TilePackageExtractor();
+        extractor.setKeepCompressed(textureFormat == TextureFormat.DDS);
+        extractor.setMipSelection(mipLevel, maxSize);
+        extractor.setDeduplicator(deduplicator);
+        extractor.setThreads(ParallelExecutor.threadsPerItem(threads, files.size()));
+        
+        AtomicInteger heightmapSuccess = new AtomicInteger();
+        AtomicInteger heightmapFailed = new AtomicInteger();
+        AtomicInteger splatSuccess = new AtomicInteger();
+        AtomicInteger splatFailed = new AtomicInteger();
+        
+        ParallelExecutor.forEach(threads, files, file -> {
+            boolean heightmap = isHeightmapSource(file);
+            // Splatmaps are written as soon as they are decoded, then dropped
+            SplatmapSink splatmapSink = !isSplatmapSource(file) ? null : (tileName, splat) -> {
+                Path tileDir = outputDir.resolve(tileName);
+                Path outputPath = tileDir.resolve(splat.fileName);
                 
-                success++;
-                if (verbose) {
-                    System.out.printf("  Extracted: %s -> %s/%s%n", 
-                        tile.getSourceName(), tileDirName, baseName + ".*");
+                try {
+                    Files.createDirectories(tileDir);
+                    manifest.addTile(tileName);
+                    boolean written = writeTexture(splat.image, splat.compressed, splat.content, outputPath);
+                    manifest.addSplatmap(tileName, splat.layerIndex, splat.fileName);
+                    if (written) {
+                        splatSuccess.incrementAndGet();
+                        if (verbose) {
+                            System.out.printf("  Extracted: %s%n", splat.fileName);
+                        }
+                    }
+                } catch (IOException e) {
+                    splatFailed.incrementAndGet();
+                    System.err.println("  Failed: " + splat.fileName + " - " + e.getMessage());
                 }
+            };
+            
+            TilePackageExtractor.TileResult result;
+            try {
+                result = extractor.extract(file, heightmap, splatmapSink);
             } catch (IOException e) {
-                failed++;
+                if (heightmap) heightmapFailed.incrementAndGet();
                 System.err.println("  Failed: " + file.getFileName() + " - " + e.getMessage());
+                return;
             }
-        }
-        
-        System.out.printf("Extracted %d heightmaps (%d failed)%n", success, failed);
-        return new int[]{success, failed};
-    }
-    
-    private int[] extractSplatmaps() throws IOException {
-        SplatmapExtractor extractor = new SplatmapExtractor();
-        Map<String, List<SplatmapInfo>> allSplatmaps = extractor.extractAll(inputDir);
-        
-        int success = 0;
-        int failed = 0;
-        
-        for (Map.Entry<String, List<SplatmapInfo>> entry : allSplatmaps.entrySet()) {
-            String tileName = entry.getKey();
-            List<SplatmapInfo> splatmaps = entry.getValue();
             
-            Path tileDir = outputDir.resolve(tileName);
-            Files.createDirectories(tileDir);
-            
-            for (SplatmapInfo splat : splatmaps) {
-                Path outputPath = tileDir.resolve(splat.fileName);
-                
+            if (result.heightmap != null) {
                 try {
-                    ImageIO.write(splat.image, "png", outputPath.toFile());
-                    success++;
-                    if (verbose) {
-                        System.out.printf("  Extracted: %s%n", splat.fileName);
-                    }
+                    writeHeightmap(result.heightmap);
+                    heightmapSuccess.incrementAndGet();
                 } catch (IOException e) {
-                    failed++;
-                    System.err.println("  Failed: " + splat.fileName + " - " + e.getMessage());
+                    heightmapFailed.incrementAndGet();
+                    System.err.println("  Failed: " + file.getFileName() + " - " + e.getMessage());
                 }
+            } else if (result.heightmapError != null) {
+                heightmapFailed.incrementAndGet();
+                System.err.println("  Failed: " + file.getFileName() + " - " + result.heightmapError.getMessage());
             }
-        }
+        });
         
-        System.out.printf("Extracted %d splatmaps (%d failed)%n", success, failed);
-        return new int[]{success, failed};
+        int[] linked = linkCopies();
+        splatSuccess.addAndGet(linked[0]);
+        splatFailed.addAndGet(linked[1]);
+        
+        System.out.printf("Extracted %d heightmaps (%d failed)%n", heightmapSuccess.get(), heightmapFailed.get());
+        if (!skipSplatmaps) {
+            System.out.printf("Extracted %d splatmaps (%d failed)%n", splatSuccess.get(), splatFailed.get());
+        }
+        return new int[]{heightmapSuccess.get() + splatSuccess.get(), heightmapFailed.get() + splatFailed.get()};
+    }
+    
+    private boolean isHeightmapSource(Path file) {
+        return matchesPattern(file.getFileName().toString());
+    }
+    
+    private boolean isSplatmapSource(Path file) {
+        return !skipSplatmaps && TilePackageExtractor.isTilePackage(file.getFileName().toString());
+    }
+    
+    /**
+     * Write a heightmap tile to extracted/XX_YY/XX_YY_heightmap.png, XX_YY_heightmap16.png and .raw.
+     */
+    private void writeHeightmap(TerrainTile tile) throws IOException {
+        // Create tile subdirectory: extracted/XX_YY/
+        String tileDirName = String.format("%d_%d", tile.getX(), tile.getY());
+        Path tileDir = outputDir.resolve(tileDirName);
+        Files.createDirectories(tileDir);
+        manifest.addTile(tileDirName);
+        
+        // Generate output filenames: XX_YY_heightmap.png, XX_YY_heightmap16.png and XX_YY_heightmap.raw
+        String baseName = String.format("%d_%d_heightmap", tile.getX(), tile.getY());
+        Path pngPath = tileDir.resolve(baseName + ".png");
+        Path png16Path = tileDir.resolve(baseName + "16.png");
+        Path rawPath = tileDir.resolve(baseName + ".raw");
+        
+        HeightmapWriter.write(tile, pngPath, png16Path, rawPath);
+        
+        if (verbose) {
+            System.out.printf("  Extracted: %s -> %s/%s%n", 
+                tile.getSourceName(), tileDirName, baseName + ".*");
+        }
     }
     
     private int[] extractDetailMaps() throws IOException {
@@ -240,47 +345,60 @@ public class L2TerrainExtractor implements Callable<Integer> {
             System.err.println("Error: Detail maps directory does not exist: " + detailMapsDir);
             return new int[]{0, 0};
         }
+        manifest.beginDetailMaps();
         
         DetailMapExtractor extractor = new DetailMapExtractor();
-        Map<String, Map<Integer, BufferedImage>> allDetailMaps = extractor.extractAllWithLayerNumbers(detailMapsDir);
+        extractor.setThreads(threads);
+        extractor.setKeepCompressed(textureFormat == TextureFormat.DDS);
+        extractor.setMipSelection(mipLevel, maxSize);
+        extractor.setDeduplicator(deduplicator);
+        Map<String, Map<Integer, DetailMap>> allDetailMaps = extractor.extractAll(detailMapsDir);
         
-        int success = 0;
-        int failed = 0;
+        AtomicInteger success = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
         
-        for (Map.Entry<String, Map<Integer, BufferedImage>> entry : allDetailMaps.entrySet()) {
+        ParallelExecutor.forEach(threads, List.copyOf(allDetailMaps.entrySet()), entry -> {
             String tileName = entry.getKey();
-            Map<Integer, BufferedImage> layers = entry.getValue();
+            Map<Integer, DetailMap> layers = entry.getValue();
             
             // Parse tile coordinates from tileName (e.g., "23_16")
             String[] parts = tileName.split("_");
-            if (parts.length < 2) continue;
+            if (parts.length < 2) return;
             
             String tileDirName = tileName;
             Path tileDir = outputDir.resolve(tileDirName);
             Files.createDirectories(tileDir);
+            manifest.addTile(tileDirName);
             
-            for (Map.Entry<Integer, BufferedImage> layerEntry : layers.entrySet()) {
+            for (Map.Entry<Integer, DetailMap> layerEntry : layers.entrySet()) {
                 int layerNum = layerEntry.getKey();
-                BufferedImage layer = layerEntry.getValue();
+                DetailMap layer = layerEntry.getValue();
                 // Use actual deco layer number in filename
-                String fileName = String.format("%s_detailmap_%d.png", tileName, layerNum);
+                String fileName = String.format("%s_detailmap_%d.%s", tileName, layerNum, extension(layer.compressed, layer.content));
                 Path outputPath = tileDir.resolve(fileName);
                 
                 try {
-                    ImageIO.write(layer, "png", outputPath.toFile());
-                    success++;
-                    if (verbose) {
-                        System.out.printf("  Extracted: %s%n", fileName);
+                    boolean written = writeTexture(layer.image, layer.compressed, layer.content, outputPath);
+                    manifest.addDetailMap(tileDirName, layerNum, fileName);
+                    if (written) {
+                        success.incrementAndGet();
+                        if (verbose) {
+                            System.out.printf("  Extracted: %s%n", fileName);
+                        }
                     }
                 } catch (IOException e) {
-                    failed++;
+                    failed.incrementAndGet();
                     System.err.println("  Failed: " + fileName + " - " + e.getMessage());
                 }
             }
-        }
+        });
         
-        System.out.printf("Extracted %d detail maps (%d failed)%n", success, failed);
-        return new int[]{success, failed};
+        int[] linked = linkCopies();
+        success.addAndGet(linked[0]);
+        failed.addAndGet(linked[1]);
+        
+        System.out.printf("Extracted %d detail maps (%d failed)%n", success.get(), failed.get());
+        return new int[]{success.get(), failed.get()};
     }
     
     private int[] extractMetadata() throws IOException {
@@ -290,25 +408,43 @@ public class L2TerrainExtractor implements Callable<Integer> {
         }
         
         MetadataExtractor extractor = new MetadataExtractor();
+        extractor.setThreads(threads);
+        extractor.setCacheSnapshot(outputDir.resolve(TerrainCacheSnapshot.FILE_NAME));
         
-        // Pass 1: Build global cache from all map files
-        extractor.buildCache(mapsDir);
+        // Pass 1: Build global cache from all map files, collecting static meshes
+        // in the same pass when requested so each map is only opened once
+        if (extractStaticMeshes) {
+            staticMeshExtractor = new StaticMeshExtractor();
+            staticMeshExtractor.setVerbose(verbose);
+            staticMeshExtractor.setThreads(threads);
+            extractor.buildCache(mapsDir, List.of(staticMeshExtractor.visitor(outputDir)));
+        } else {
+            extractor.buildCache(mapsDir);
+        }
         
-        // Pass 2: Generate metadata for each tile using the cache
-        List<TileMetadata> allMetadata = extractor.generateAllMetadata(outputDir);
+        // Pass 2: Generate metadata for each tile using the cache and the files extracted above
+        tileMetadata = extractor.generateAllMetadata(outputDir, manifest);
         
-        System.out.printf("Generated metadata for %d tiles%n", allMetadata.size());
-        return new int[]{allMetadata.size(), 0};
+        System.out.printf("Generated metadata for %d tiles%n", tileMetadata.size());
+        return new int[]{tileMetadata.size(), 0};
     }
     
     private int[] extractTerrainTextures() throws IOException {
         TerrainTextureExtractor extractor = new TerrainTextureExtractor();
+        extractor.setThreads(threads);
+        extractor.setIndexFile(outputDir.resolve(TextureIndex.FILE_NAME));
+        extractor.setDeduplicator(deduplicator);
+        extractor.setKeepCompressed(textureFormat == TextureFormat.DDS);
+        extractor.setMipSelection(mipLevel, maxSize);
         
         Set<String> textureNames = null;
         
         if (!extractAllTerrainTextures) {
-            // First, collect all unique texture names from metadata files
-            textureNames = extractor.collectTextureNamesFromMetadata(outputDir);
+            // First, collect all unique texture names from the metadata, reading
+            // the metadata files of an earlier run if none was generated in this one
+            textureNames = tileMetadata != null
+                ? extractor.collectTextureNames(tileMetadata)
+                : extractor.collectTextureNamesFromMetadata(outputDir);
             
             if (textureNames.isEmpty()) {
                 System.out.println("No texture names found in metadata. Run with --maps first to generate metadata,");
@@ -332,14 +468,15 @@ public class L2TerrainExtractor implements Callable<Integer> {
         int failed = 0;
         
         for (TextureInfo tex : textures.values()) {
-            Path outputPath = texOutputDir.resolve(tex.name.toLowerCase() + ".png");
+            Path outputPath = texOutputDir.resolve(tex.name.toLowerCase() + "." + extension(tex.compressed, tex.content));
             
             try {
-                ImageIO.write(tex.image, "PNG", outputPath.toFile());
-                success++;
-                if (verbose) {
-                    System.out.printf("  Extracted: %s (%dx%d from %s)%n", 
-                        tex.name, tex.width, tex.height, tex.sourcePackage);
+                if (writeTexture(tex.image, tex.compressed, tex.content, outputPath)) {
+                    success++;
+                    if (verbose) {
+                        System.out.printf("  Extracted: %s (%dx%d from %s)%n", 
+                            tex.name, tex.width, tex.height, tex.sourcePackage);
+                    }
                 }
             } catch (IOException e) {
                 failed++;
@@ -347,6 +484,10 @@ public class L2TerrainExtractor implements Callable<Integer> {
             }
         }
         
+        int[] linked = linkCopies();
+        success += linked[0];
+        failed += linked[1];
+        
         // Report any textures that were referenced but not found
         if (!extractAllTerrainTextures && textureNames != null) {
             Set<String> foundNames = new HashSet<>();
@@ -378,8 +519,14 @@ public class L2TerrainExtractor implements Callable<Integer> {
             return new int[]{0, 0};
         }
         
+        // Already collected during the metadata pass
+        if (staticMeshExtractor != null) {
+            return new int[]{staticMeshExtractor.printSummary(), 0};
+        }
+        
         StaticMeshExtractor extractor = new StaticMeshExtractor();
         extractor.setVerbose(verbose);
+        extractor.setThreads(threads);
         
         int tilesProcessed = extractor.extractAll(mapsDir, outputDir);
         
@@ -387,46 +534,53 @@ public class L2TerrainExtractor implements Callable<Integer> {
     }
     
     /**
-     * Write tile as 8-bit PNG (normalized to 0-255 based on tile's own height range).
+     * Write an extracted texture: the original DXT data as .dds if it was kept
+     * compressed, otherwise the decoded image as PNG.
      */
-    private void writePng(TerrainTile tile, Path output) throws IOException {
-        int width = tile.getWidth();
-        int height = tile.getHeight();
-        int[] heights = tile.getHeightData();
-        
-        int minHeight = tile.getMinHeight();
-        int maxHeight = tile.getMaxHeight();
-        double range = Math.max(1, maxHeight - minHeight);
-        
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-        
-        for (int y = 0; y < height; y++) {
-            int rowOffset = y * width;
-            for (int x = 0; x < width; x++) {
-                int h = heights[rowOffset + x];
-                int gray = (int) (((h - minHeight) / range) * 255.0);
-                gray = Math.max(0, Math.min(255, gray));
-                int rgb = (gray << 16) | (gray << 8) | gray;
-                image.setRGB(x, y, rgb);
-            }
+    private void writeTexture(BufferedImage image, CompressedTexture compressed, Path output) throws IOException {
+        if (compressed != null) {
+            DdsWriter.write(compressed, output);
+        } else {
+            ImageIO.write(image, "png", output.toFile());
         }
-        
-        ImageIO.write(image, "png", output.toFile());
     }
     
     /**
-     * Write tile as 16-bit RAW (little-endian, preserves original values).
+     * Write an extracted texture, or with --dedup record a copy of content
+     * already written elsewhere, to be linked once the stage is done.
+     * 
+     * @return true if the texture was written, false if it was recorded as a copy
      */
-    private void writeRaw(TerrainTile tile, Path output) throws IOException {
-        int[] heights = tile.getHeightData();
-        ByteBuffer buffer = ByteBuffer.allocate(heights.length * 2);
-        buffer.order(ByteOrder.LITTLE_ENDIAN);
-        
-        for (int h : heights) {
-            buffer.putShort((short) h);
+    private boolean writeTexture(BufferedImage image, CompressedTexture compressed, ContentDeduplicator.Content content,
+                                 Path output) throws IOException {
+        if (content != null && image == null && compressed == null) {
+            deduplicator.addCopy(content, output);
+            return false;
         }
-        
-        Files.write(output, buffer.array());
+        try {
+            writeTexture(image, compressed, output);
+        } catch (IOException e) {
+            // later textures with this content must be written themselves
+            if (content != null) deduplicator.release(content);
+            throw e;
+        }
+        if (content != null) {
+            deduplicator.written(content, output);
+        }
+        return true;
+    }
+    
+    /**
+     * Link the copies recorded by a texture stage to the files written for their content.
+     * 
+     * @return number of copies linked and failed
+     */
+    private int[] linkCopies() {
+        return deduplicator != null ? deduplicator.linkCopies() : new int[]{0, 0};
+    }
+    
+    private static String extension(CompressedTexture compressed, ContentDeduplicator.Content content) {
+        return compressed != null || (content != null && content.compressed()) ? "dds" : "png";
     }
     
     private boolean matchesPattern(String filename) {
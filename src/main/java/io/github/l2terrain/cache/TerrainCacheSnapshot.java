@@ -0,0 +1,145 @@
+package io.github.l2terrain.cache;
+
+import io.github.l2terrain.cache.TerrainDataCache.DecoLayerInfo;
+import io.github.l2terrain.cache.TerrainDataCache.MapAssociations;
+import io.github.l2terrain.cache.TerrainDataCache.SplatmapInfo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of a {@link TerrainDataCache}, so later runs only re-scan
+ * the maps that changed.
+ * 
+ * <p>The snapshot holds each map's {@link MapAssociations} together with the
+ * map file's fingerprint. The deco, splatmap and tile maps of the cache are
+ * rebuilt from these by the usual merge, so a changed map simply replaces its
+ * own entry.</p>
+ */
+public final class TerrainCacheSnapshot {
+    
+    /** File name of the snapshot in the output directory */
+    public static final String FILE_NAME = "terrain_cache.bin";
+    
+    private static final int MAGIC = 0x4C325443; // "L2TC"
+    private static final int VERSION = 1;
+    
+    /**
+     * The cached associations of one map file.
+     */
+    public static final class Entry {
+        public final String fingerprint;
+        public final MapAssociations associations;
+        
+        public Entry(String fingerprint, MapAssociations associations) {
+            this.fingerprint = fingerprint;
+            this.associations = associations;
+        }
+    }
+    
+    private TerrainCacheSnapshot() {
+        // Utility class - prevent instantiation
+    }
+    
+    /**
+     * Read a snapshot.
+     * 
+     * @param file the snapshot file
+     * @return entries by map file name; empty if the file does not exist
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static Map<String, Entry> read(Path file) throws IOException {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        if (!Files.isRegularFile(file)) return entries;
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a terrain cache snapshot, or from another version: " + file);
+            }
+            
+            int mapCount = in.readInt();
+            for (int i = 0; i < mapCount; i++) {
+                String mapName = in.readUTF();
+                String fingerprint = in.readUTF();
+                int tileX = in.readInt();
+                int tileY = in.readInt();
+                String tileKey = tileX + "_" + tileY;
+                
+                int decoCount = in.readInt();
+                List<DecoLayerInfo> decoLayers = new ArrayList<>(decoCount);
+                for (int j = 0; j < decoCount; j++) {
+                    decoLayers.add(new DecoLayerInfo(in.readUTF(), readNullable(in), readNullable(in), tileKey));
+                }
+                
+                int splatCount = in.readInt();
+                List<SplatmapInfo> splatmaps = new ArrayList<>(splatCount);
+                for (int j = 0; j < splatCount; j++) {
+                    splatmaps.add(new SplatmapInfo(in.readUTF(), readNullable(in), tileKey));
+                }
+                
+                entries.put(mapName, new Entry(fingerprint, new MapAssociations(tileX, tileY, decoLayers, splatmaps)));
+            }
+        }
+        return entries;
+    }
+    
+    /**
+     * Write a snapshot, replacing any existing one.
+     * 
+     * @param file the snapshot file
+     * @param entries entries by map file name
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, Map<String, Entry> entries) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                MapAssociations associations = e.getValue().associations;
+                out.writeUTF(e.getKey());
+                out.writeUTF(e.getValue().fingerprint);
+                out.writeInt(associations.tileX);
+                out.writeInt(associations.tileY);
+                
+                out.writeInt(associations.decoLayers.size());
+                for (DecoLayerInfo deco : associations.decoLayers) {
+                    out.writeUTF(deco.textureName);
+                    writeNullable(out, deco.meshName);
+                    writeNullable(out, deco.meshPackage);
+                }
+                
+                out.writeInt(associations.splatmaps.size());
+                for (SplatmapInfo splat : associations.splatmaps) {
+                    out.writeUTF(splat.splatmapName);
+                    writeNullable(out, splat.groundTexture);
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+    
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+}
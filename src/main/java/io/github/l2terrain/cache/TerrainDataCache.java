@@ -1,16 +1,22 @@
 package io.github.l2terrain.cache;
 
-import io.github.l2terrain.crypto.L2Decryptor;
-import io.github.l2terrain.utils.TextureUtils;
-import io.github.l2terrain.utils.UnrealPackageUtils;
+import io.github.l2terrain.utils.FileFingerprint;
+import io.github.l2terrain.utils.MapPass;
+import io.github.l2terrain.utils.ParallelExecutor;
+import io.github.l2terrain.utils.TerrainInfoDecoder;
+import io.github.l2terrain.utils.TerrainInfoDecoder.DecoLayer;
+import io.github.l2terrain.utils.TerrainInfoDecoder.Layer;
+import io.github.l2terrain.utils.TerrainInfoDecoder.TerrainLayers;
 import net.shrimpworks.unreal.packages.Package;
-import net.shrimpworks.unreal.packages.PackageReader;
 import net.shrimpworks.unreal.packages.entities.Export;
+import net.shrimpworks.unreal.packages.entities.Import;
+import net.shrimpworks.unreal.packages.entities.Named;
+import net.shrimpworks.unreal.packages.entities.ObjectReference;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -33,6 +39,9 @@ public class TerrainDataCache {
     // Pattern to match splatmap texture names: XX_YY_suffix
     private static final Pattern SPLATMAP_PATTERN = Pattern.compile("(\\d+)_(\\d+)_([A-Za-z]\\w*)");
     
+    // Pattern to match map file names: XX_YY.unr
+    private static final Pattern MAP_FILE_PATTERN = Pattern.compile("(\\d+)_(\\d+)\\.unr");
+    
     // DecoTexture name → DecoLayerInfo (mesh, package, source tile)
     private final Map<String, DecoLayerInfo> decoTextureCache = new HashMap<>();
     
@@ -52,217 +61,268 @@ public class TerrainDataCache {
      * Build the cache by scanning all map files in the given directory.
      */
     public void buildCache(Path mapsFolder) throws IOException {
-        List<Path> mapFiles = new ArrayList<>();
-        try (var stream = Files.list(mapsFolder)) {
-            stream.filter(p -> {
-                String name = p.getFileName().toString().toLowerCase();
-                return name.matches("\\d+_\\d+\\.unr");
-            }).forEach(mapFiles::add);
-        }
-        
+        buildCache(MapPass.findMapFiles(mapsFolder), List.of(), ParallelExecutor.defaultThreads());
+    }
+    
+    /**
+     * Build the cache from the given map files, handing each opened map to
+     * other visitors too, so maps needed by several consumers are only
+     * opened once.
+     * 
+     * @param mapFiles the XX_YY.unr files to scan
+     * @param otherVisitors additional consumers of each opened map; must be
+     *                      thread-safe if more than one thread is used
+     * @param threads number of maps to open and process at a time
+     */
+    public void buildCache(List<Path> mapFiles, List<MapPass.Visitor> otherVisitors, int threads) {
+        buildCache(mapFiles, otherVisitors, threads, null);
+    }
+    
+    /**
+     * Build the cache from the given map files, reusing the associations of
+     * unchanged maps from a snapshot of an earlier run.
+     * 
+     * <p>Each map is scanned into its own {@link MapAssociations} without
+     * touching the cache, so maps can be scanned in parallel. The results are
+     * merged afterwards in tile order, so when several tiles associate the
+     * same texture, the same one wins on every run.</p>
+     * 
+     * <p>With a snapshot, only maps whose {@link FileFingerprint} changed are
+     * scanned, and the snapshot is then rewritten for the current maps. Maps
+     * are still opened for the other visitors, if there are any.</p>
+     * 
+     * @param mapFiles the XX_YY.unr files to scan
+     * @param otherVisitors additional consumers of each opened map; must be
+     *                      thread-safe if more than one thread is used
+     * @param threads number of maps to open and process at a time
+     * @param snapshot snapshot file to reuse and update, or null for none
+     */
+    public void buildCache(List<Path> mapFiles, List<MapPass.Visitor> otherVisitors, int threads, Path snapshot) {
         System.out.println("Building terrain cache from " + mapFiles.size() + " map files...");
         
-        int processed = 0;
-        for (Path mapFile : mapFiles) {
-            try {
-                processMapFile(mapFile);
-                processed++;
-                if (processed % 20 == 0) {
-                    System.out.println("  Processed " + processed + "/" + mapFiles.size() + " maps");
+        // Find the maps whose snapshot entry is still valid
+        Map<String, TerrainCacheSnapshot.Entry> entries = new ConcurrentHashMap<>();
+        Map<String, String> fingerprints = new HashMap<>();
+        List<Path> changedMaps = mapFiles;
+        if (snapshot != null) {
+            Map<String, TerrainCacheSnapshot.Entry> previous = readSnapshot(snapshot);
+            changedMaps = new ArrayList<>();
+            for (Path mapFile : mapFiles) {
+                String name = mapFile.getFileName().toString();
+                String fingerprint = fingerprint(mapFile);
+                TerrainCacheSnapshot.Entry entry = previous.get(name);
+                if (fingerprint != null && entry != null && entry.fingerprint.equals(fingerprint)) {
+                    entries.put(name, entry);
+                } else {
+                    changedMaps.add(mapFile);
+                    if (fingerprint != null) fingerprints.put(name, fingerprint);
                 }
-            } catch (Exception e) {
-                System.err.println("  Error processing " + mapFile.getFileName() + ": " + e.getMessage());
             }
+            if (!entries.isEmpty()) {
+                System.out.println("Reusing " + entries.size() + " unchanged maps from " + snapshot.getFileName());
+            }
+        }
+        
+        // Every map is a known tile, even if it then fails to open or decode
+        for (Path mapFile : mapFiles) {
+            Matcher coordMatcher = MAP_FILE_PATTERN.matcher(mapFile.getFileName().toString().toLowerCase());
+            if (coordMatcher.matches()) {
+                allTiles.add(Integer.parseInt(coordMatcher.group(1)) + "_" + Integer.parseInt(coordMatcher.group(2)));
+            }
+        }
+        
+        List<MapPass.Visitor> visitors = new ArrayList<>();
+        visitors.add((mapFile, pkg, mapThreads) -> {
+            String name = mapFile.getFileName().toString();
+            if (entries.containsKey(name)) return;
+            
+            Matcher coordMatcher = MAP_FILE_PATTERN.matcher(name.toLowerCase());
+            if (!coordMatcher.matches()) return;
+            
+            int tileX = Integer.parseInt(coordMatcher.group(1));
+            int tileY = Integer.parseInt(coordMatcher.group(2));
+            entries.put(name, new TerrainCacheSnapshot.Entry(fingerprints.get(name), processMap(tileX, tileY, pkg)));
+        });
+        visitors.addAll(otherVisitors);
+        
+        // Unchanged maps only need opening if another visitor wants them
+        MapPass.run(otherVisitors.isEmpty() ? changedMaps : mapFiles, visitors, threads);
+        
+        List<MapAssociations> sorted = new ArrayList<>();
+        entries.values().forEach(entry -> sorted.add(entry.associations));
+        sorted.sort(Comparator.comparingInt((MapAssociations a) -> a.tileX).thenComparingInt(a -> a.tileY));
+        for (MapAssociations associations : sorted) {
+            merge(associations);
+        }
+        
+        if (snapshot != null) {
+            writeSnapshot(snapshot, entries);
         }
         
         System.out.println("Cache built: " + decoTextureCache.size() + " deco textures, " 
             + splatmapCache.size() + " splatmaps from " + allTiles.size() + " tiles");
     }
     
-    private void processMapFile(Path mapFile) throws IOException {
-        String filename = mapFile.getFileName().toString();
-        Matcher coordMatcher = Pattern.compile("(\\d+)_(\\d+)\\.unr").matcher(filename.toLowerCase());
-        if (!coordMatcher.matches()) return;
-        
-        int tileX = Integer.parseInt(coordMatcher.group(1));
-        int tileY = Integer.parseInt(coordMatcher.group(2));
-        String tileKey = tileX + "_" + tileY;
-        allTiles.add(tileKey);
+    private static Map<String, TerrainCacheSnapshot.Entry> readSnapshot(Path snapshot) {
+        try {
+            return TerrainCacheSnapshot.read(snapshot);
+        } catch (IOException e) {
+            System.err.println("  Ignoring terrain cache snapshot: " + e.getMessage());
+            return Map.of();
+        }
+    }
+    
+    private static void writeSnapshot(Path snapshot, Map<String, TerrainCacheSnapshot.Entry> entries) {
+        // only maps with a fingerprint can be checked next time
+        Map<String, TerrainCacheSnapshot.Entry> valid = new TreeMap<>();
+        entries.forEach((name, entry) -> {
+            if (entry.fingerprint != null) valid.put(name, entry);
+        });
         
-        Path tempFile = Files.createTempFile("l2map_", ".unr");
         try {
-            L2Decryptor.decryptFile(mapFile, tempFile);
-            extractAssociations(tempFile, tileKey);
-        } finally {
-            Files.deleteIfExists(tempFile);
+            TerrainCacheSnapshot.write(snapshot, valid);
+        } catch (IOException e) {
+            System.err.println("  Could not write terrain cache snapshot: " + e.getMessage());
         }
     }
     
-    private void extractAssociations(Path packagePath, String tileKey) throws IOException {
-        try (Package pkg = new Package(new PackageReader(packagePath))) {
-            // Build reference lookup tables
-            Map<Integer, String> refNames = new HashMap<>();
-            Map<Integer, String> refClasses = new HashMap<>();
-            Map<Integer, String> refPackages = new HashMap<>();
-            
-            for (int i = 0; i < pkg.imports.length; i++) {
-                refNames.put(-(i + 1), pkg.imports[i].name.name);
-                refClasses.put(-(i + 1), pkg.imports[i].className.name);
-                refPackages.put(-(i + 1), pkg.imports[i].classPackage.name);
-            }
-            for (int i = 0; i < pkg.exports.length; i++) {
-                refNames.put(i + 1, pkg.exports[i].name.name);
-                refClasses.put(i + 1, pkg.exports[i].classIndex.get().name().name);
-            }
-            
-            // Find TerrainInfo export and parse its raw data
-            for (Export export : pkg.exports) {
-                String className = export.classIndex.get().name().name;
-                if (!className.equals("TerrainInfo")) continue;
-                
-                PackageReader reader = UnrealPackageUtils.getPackageReader(pkg);
-                reader.moveTo(export.pos);
-                byte[] data = new byte[export.size];
-                reader.readBytes(data, 0, export.size);
-                
-                // Scan for all object references
-                List<RefInfo> refs = scanForReferences(data, refNames, refClasses, refPackages);
-                
-                // Extract DecoLayer associations
-                extractDecoLayers(refs, tileKey);
-                
-                // Extract splatmap associations
-                extractSplatmaps(refs, tileKey);
-                
-                break;
+    private static String fingerprint(Path mapFile) {
+        try {
+            return FileFingerprint.of(mapFile);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Collect the associations of a single opened map. This only reads the
+     * package, so it may be called for several maps at once.
+     * 
+     * @param tileX tile X coordinate of the map
+     * @param tileY tile Y coordinate of the map
+     * @param pkg the opened map package
+     * @return the map's deco layer and splatmap associations, in layer order
+     * @throws IOException if the map's TerrainInfo cannot be decoded
+     */
+    public static MapAssociations processMap(int tileX, int tileY, Package pkg) throws IOException {
+        String tileKey = tileX + "_" + tileY;
+        try {
+            // Decode the TerrainInfo's layer structs
+            for (Export export : pkg.exportsOfClass("TerrainInfo")) {
+                TerrainLayers terrain = TerrainInfoDecoder.decode(pkg, export);
+                return new MapAssociations(tileX, tileY,
+                    decoLayers(terrain.decoLayers, tileKey), splatmaps(terrain.layers, tileKey));
             }
         } catch (Exception e) {
             throw new IOException("Failed to extract associations: " + e.getMessage(), e);
         }
+        return new MapAssociations(tileX, tileY, List.of(), List.of());
     }
     
-    private List<RefInfo> scanForReferences(byte[] data, Map<Integer, String> refNames,
-                                             Map<Integer, String> refClasses, 
-                                             Map<Integer, String> refPackages) {
-        List<RefInfo> refs = new ArrayList<>();
-        Set<Integer> usedOffsets = new HashSet<>();
+    private static List<DecoLayerInfo> decoLayers(List<DecoLayer> decoLayers, String sourceTile) {
+        List<DecoLayerInfo> infos = new ArrayList<>();
         
-        for (int i = 0; i < data.length - 1; i++) {
-            int idx = TextureUtils.readCompactIndex(data, i);
-            int len = TextureUtils.compactIndexLength(idx);
-            
-            if (idx != 0 && refNames.containsKey(idx)) {
-                boolean overlaps = false;
-                for (int j = i; j < i + len; j++) {
-                    if (usedOffsets.contains(j)) {
-                        overlaps = true;
-                        break;
-                    }
-                }
-                if (!overlaps) {
-                    for (int j = i; j < i + len; j++) {
-                        usedOffsets.add(j);
-                    }
-                    refs.add(new RefInfo(i, idx, refNames.get(idx), 
-                        refClasses.get(idx), refPackages.get(idx)));
+        for (DecoLayer deco : decoLayers) {
+            // The layer's XX_YY_DecoNN texture is normally its density map
+            String textureName = null;
+            for (ObjectReference map : List.of(deco.densityMap, deco.scaleMap, deco.colorMap)) {
+                String name = referenceName(map);
+                if (name != null && DECO_PATTERN.matcher(name).matches()) {
+                    textureName = name;
+                    break;
                 }
             }
+            if (textureName == null) continue;
+            
+            String meshName = referenceName(deco.staticMesh);
+            String meshPackage = meshName != null ? packageName(deco.staticMesh) : null;
+            infos.add(new DecoLayerInfo(textureName, meshName, meshPackage, sourceTile));
         }
         
-        return refs;
+        return infos;
     }
     
-    private void extractDecoLayers(List<RefInfo> refs, String sourceTile) {
-        List<String> tileDecos = new ArrayList<>();
+    private static List<SplatmapInfo> splatmaps(List<Layer> layers, String sourceTile) {
+        List<SplatmapInfo> infos = new ArrayList<>();
         
-        for (int i = 0; i < refs.size(); i++) {
-            RefInfo ref = refs.get(i);
-            if (!"Texture".equals(ref.className)) continue;
+        for (Layer layer : layers) {
+            String splatmapName = referenceName(layer.alphaMap);
+            if (splatmapName == null) continue;
             
-            Matcher decoMatcher = DECO_PATTERN.matcher(ref.name);
-            if (!decoMatcher.matches()) continue;
+            Matcher splatMatcher = SPLATMAP_PATTERN.matcher(splatmapName);
+            if (!splatMatcher.matches()) continue;
             
-            String textureName = ref.name;
-            tileDecos.add(textureName);
+            String suffix = splatMatcher.group(3);
+            if (suffix.toLowerCase().startsWith("deco")) continue;
             
-            // Look for the next StaticMesh reference within ~20 bytes
-            String meshName = null;
-            String meshPackage = null;
-            for (int j = i + 1; j < refs.size(); j++) {
-                RefInfo next = refs.get(j);
-                if (next.offset > ref.offset + 20) break;
-                
-                if ("StaticMesh".equals(next.className)) {
-                    meshName = next.name;
-                    meshPackage = next.packageName;
-                    break;
-                }
+            // The layer's own texture, unless it is another tile texture
+            String groundTexture = referenceName(layer.texture);
+            if (groundTexture != null && groundTexture.matches("\\d+_\\d+.*")) {
+                groundTexture = null;
             }
             
-            // Only add/update if we found a mesh association
-            if (meshName != null) {
-                DecoLayerInfo existing = decoTextureCache.get(textureName);
-                if (existing == null || existing.meshName == null) {
-                    decoTextureCache.put(textureName, new DecoLayerInfo(textureName, meshName, meshPackage, sourceTile));
-                }
-            } else if (!decoTextureCache.containsKey(textureName)) {
-                // Add without mesh for now
-                decoTextureCache.put(textureName, new DecoLayerInfo(textureName, null, null, sourceTile));
-            }
+            infos.add(new SplatmapInfo(splatmapName, groundTexture, sourceTile));
         }
         
-        if (!tileDecos.isEmpty()) {
-            tileDecoLayers.computeIfAbsent(sourceTile, k -> new ArrayList<>()).addAll(tileDecos);
-        }
+        return infos;
     }
     
-    private void extractSplatmaps(List<RefInfo> refs, String sourceTile) {
-        List<String> tileSplats = new ArrayList<>();
+    /**
+     * Add one map's associations to the cache. An association with a mesh or
+     * ground texture replaces one without; otherwise the first one merged wins.
+     */
+    private void merge(MapAssociations associations) {
+        String tileKey = associations.tileX + "_" + associations.tileY;
         
-        for (int i = 0; i < refs.size(); i++) {
-            RefInfo ref = refs.get(i);
-            if (!"Texture".equals(ref.className)) continue;
-            
-            Matcher splatMatcher = SPLATMAP_PATTERN.matcher(ref.name);
-            if (!splatMatcher.matches()) continue;
-            
-            String suffix = splatMatcher.group(3);
-            if (suffix.toLowerCase().startsWith("deco")) continue;
-            
-            String splatmapName = ref.name;
-            tileSplats.add(splatmapName);
+        List<String> tileDecos = new ArrayList<>();
+        for (DecoLayerInfo deco : associations.decoLayers) {
+            tileDecos.add(deco.textureName);
             
-            // Look backwards for the ground texture (within ~20 bytes before)
-            String groundTexture = null;
-            for (int j = i - 1; j >= 0; j--) {
-                RefInfo prev = refs.get(j);
-                if (ref.offset - prev.offset > 20) break;
-                
-                if ("Texture".equals(prev.className)) {
-                    // Make sure it's not another splatmap
-                    if (!prev.name.matches("\\d+_\\d+.*")) {
-                        groundTexture = prev.name;
-                        break;
-                    }
-                }
+            DecoLayerInfo existing = decoTextureCache.get(deco.textureName);
+            if (existing == null || (existing.meshName == null && deco.meshName != null)) {
+                decoTextureCache.put(deco.textureName, deco);
             }
+        }
+        if (!tileDecos.isEmpty()) {
+            tileDecoLayers.computeIfAbsent(tileKey, k -> new ArrayList<>()).addAll(tileDecos);
+        }
+        
+        List<String> tileSplats = new ArrayList<>();
+        for (SplatmapInfo splat : associations.splatmaps) {
+            tileSplats.add(splat.splatmapName);
             
-            // Add/update cache
-            if (groundTexture != null) {
-                SplatmapInfo existing = splatmapCache.get(splatmapName);
-                if (existing == null || existing.groundTexture == null) {
-                    splatmapCache.put(splatmapName, new SplatmapInfo(splatmapName, groundTexture, sourceTile));
-                }
-            } else if (!splatmapCache.containsKey(splatmapName)) {
-                splatmapCache.put(splatmapName, new SplatmapInfo(splatmapName, null, sourceTile));
+            SplatmapInfo existing = splatmapCache.get(splat.splatmapName);
+            if (existing == null || (existing.groundTexture == null && splat.groundTexture != null)) {
+                splatmapCache.put(splat.splatmapName, splat);
             }
         }
-        
         if (!tileSplats.isEmpty()) {
-            tileSplatmaps.computeIfAbsent(sourceTile, k -> new ArrayList<>()).addAll(tileSplats);
+            tileSplatmaps.computeIfAbsent(tileKey, k -> new ArrayList<>()).addAll(tileSplats);
         }
     }
     
+    /**
+     * Name of the referenced object, or null for a null reference.
+     */
+    private static String referenceName(ObjectReference ref) {
+        if (ref.index == 0) return null;
+        return ref.get(true).name().name;
+    }
+    
+    /**
+     * Name of the outermost package containing an imported object, or null
+     * for objects in the map itself.
+     */
+    private static String packageName(ObjectReference ref) {
+        if (!(ref.get(true) instanceof Import imp)) return null;
+        
+        Named outer = null;
+        for (Named current = imp.packageIndex.get(); current instanceof Import parent; current = parent.packageIndex.get()) {
+            outer = parent;
+        }
+        return outer != null ? outer.name().name : null;
+    }
+    
     // --- Accessors ---
     
     public DecoLayerInfo getDecoLayerInfo(String textureName) {
@@ -295,17 +355,21 @@ public class TerrainDataCache {
     
     // --- Inner classes ---
     
-    private static class RefInfo {
-        int offset;
-        String name;
-        String className;
-        String packageName;
+    /**
+     * The associations found in a single map, before they are merged into
+     * the cache.
+     */
+    public static final class MapAssociations {
+        public final int tileX;
+        public final int tileY;
+        public final List<DecoLayerInfo> decoLayers;
+        public final List<SplatmapInfo> splatmaps;
         
-        RefInfo(int offset, int index, String name, String className, String packageName) {
-            this.offset = offset;
-            this.name = name;
-            this.className = className;
-            this.packageName = packageName;
+        public MapAssociations(int tileX, int tileY, List<DecoLayerInfo> decoLayers, List<SplatmapInfo> splatmaps) {
+            this.tileX = tileX;
+            this.tileY = tileY;
+            this.decoLayers = List.copyOf(decoLayers);
+            this.splatmaps = List.copyOf(splatmaps);
         }
     }
     
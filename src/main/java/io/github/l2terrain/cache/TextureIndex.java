@@ -0,0 +1,149 @@
+package io.github.l2terrain.cache;
+
+import net.shrimpworks.unreal.packages.entities.objects.TextureBase;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the textures in regional texture packages, kept between runs.
+ * 
+ * <p>For each package the index lists every texture's name, export index,
+ * format and size together with the package file's fingerprint, so texture
+ * extraction can open only the packages holding the requested textures and
+ * go straight to their exports. A changed package simply replaces its own
+ * entry.</p>
+ */
+public final class TextureIndex {
+    
+    /** File name of the index in the output directory */
+    public static final String FILE_NAME = "texture_index.bin";
+    
+    private static final int MAGIC = 0x4C325449; // "L2TI"
+    private static final int VERSION = 1;
+    
+    /**
+     * A texture export of a package.
+     */
+    public static final class Texture {
+        public final String name;
+        public final int exportIndex;
+        public final TextureBase.Format format;
+        public final int width;
+        public final int height;
+        
+        public Texture(String name, int exportIndex, TextureBase.Format format, int width, int height) {
+            this.name = name;
+            this.exportIndex = exportIndex;
+            this.format = format;
+            this.width = width;
+            this.height = height;
+        }
+    }
+    
+    /**
+     * The textures of one package file, in export table order.
+     */
+    public static final class Entry {
+        public final String fingerprint;
+        public final List<Texture> textures;
+        
+        public Entry(String fingerprint, List<Texture> textures) {
+            this.fingerprint = fingerprint;
+            this.textures = List.copyOf(textures);
+        }
+    }
+    
+    private TextureIndex() {
+        // Utility class - prevent instantiation
+    }
+    
+    /**
+     * Read an index.
+     * 
+     * @param file the index file
+     * @return entries by package file name; empty if the file does not exist
+     * @throws IOException if the file cannot be read or is not a valid index
+     */
+    public static Map<String, Entry> read(Path file) throws IOException {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        if (!Files.isRegularFile(file)) return entries;
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a texture index, or from another version: " + file);
+            }
+            
+            int packageCount = in.readInt();
+            for (int i = 0; i < packageCount; i++) {
+                String packageName = in.readUTF();
+                String fingerprint = in.readUTF();
+                
+                int textureCount = in.readInt();
+                List<Texture> textures = new ArrayList<>(textureCount);
+                for (int j = 0; j < textureCount; j++) {
+                    String name = in.readUTF();
+                    int exportIndex = in.readInt();
+                    TextureBase.Format format = readFormat(in.readUTF());
+                    textures.add(new Texture(name, exportIndex, format, in.readInt(), in.readInt()));
+                }
+                
+                entries.put(packageName, new Entry(fingerprint, textures));
+            }
+        }
+        return entries;
+    }
+    
+    /**
+     * Write an index, replacing any existing one.
+     * 
+     * @param file the index file
+     * @param entries entries by package file name
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, Map<String, Entry> entries) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeUTF(e.getValue().fingerprint);
+                
+                out.writeInt(e.getValue().textures.size());
+                for (Texture texture : e.getValue().textures) {
+                    out.writeUTF(texture.name);
+                    out.writeInt(texture.exportIndex);
+                    // by name, so the index does not depend on the enum order
+                    out.writeUTF(texture.format.name());
+                    out.writeInt(texture.width);
+                    out.writeInt(texture.height);
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static TextureBase.Format readFormat(String name) throws IOException {
+        try {
+            return TextureBase.Format.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown texture format in index: " + name);
+        }
+    }
+}
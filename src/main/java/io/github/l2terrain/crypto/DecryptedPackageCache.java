@@ -0,0 +1,232 @@
+package io.github.l2terrain.crypto;
+
+import io.github.l2terrain.utils.FileFingerprint;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A directory of decrypted, header-stripped packages that is reused across runs.
+ * 
+ * <p>Each entry is named after the source file's path and its
+ * {@link FileFingerprint}, so an entry is only reused while the source file
+ * is unchanged.</p>
+ * 
+ * <p>The total size of the cache is capped. When an entry is added and the
+ * cap is exceeded, the least recently used entries are deleted. Use times are
+ * kept as the entries' modification times, so the order survives restarts.
+ * Entries handed out by {@link #acquire(Path)} are never evicted until they
+ * are released.</p>
+ */
+public class DecryptedPackageCache {
+    
+    private static final String ENTRY_SUFFIX = ".pkg";
+    
+    private final Path directory;
+    private final long maxBytes;
+    
+    /** Entries in least recently used first order, with their sizes */
+    private final LinkedHashMap<Path, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    
+    /** Number of threads holding each entry, which must not be deleted meanwhile */
+    private final Map<Path, Integer> pins = new HashMap<>();
+    
+    /** Decrypts in progress, so that each entry is only written by one thread */
+    private final Map<Path, CompletableFuture<Void>> decrypts = new ConcurrentHashMap<>();
+    
+    /**
+     * Open (or create) a cache directory.
+     * 
+     * @param directory where decrypted packages are kept
+     * @param maxBytes size cap for all entries together
+     * @throws IOException if the directory cannot be created or listed
+     */
+    public DecryptedPackageCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        
+        Files.createDirectories(directory);
+        
+        List<Path> existing = new ArrayList<>();
+        try (var stream = Files.list(directory)) {
+            stream.filter(p -> p.getFileName().toString().endsWith(ENTRY_SUFFIX)).forEach(existing::add);
+        }
+        existing.sort(Comparator.comparing(DecryptedPackageCache::lastUsed));
+        for (Path entry : existing) {
+            long size = Files.size(entry);
+            entries.put(entry, size);
+            totalBytes += size;
+        }
+    }
+    
+    /**
+     * Get the decrypted copy of a package, decrypting it into the cache if
+     * there is no valid copy yet.
+     * 
+     * <p>The returned entry is pinned: it is not evicted or replaced until it
+     * is passed to {@link #release(Path)}, so it must be released once the
+     * caller has opened it. If several threads ask for the same package, it
+     * is decrypted once and the others wait for that copy.</p>
+     * 
+     * @param source the encrypted package file
+     * @return the decrypted package (without the L2 header)
+     * @throws IOException if the source cannot be read or the copy cannot be written
+     * @throws IllegalArgumentException if source is not a valid L2 encrypted file
+     */
+    public Path acquire(Path source) throws IOException {
+        String prefix = pathHash(source) + "-";
+        Path entry = directory.resolve(prefix + FileFingerprint.of(source) + ENTRY_SUFFIX);
+        
+        while (true) {
+            if (acquireExisting(entry)) return entry;
+            
+            CompletableFuture<Void> decrypting = new CompletableFuture<>();
+            CompletableFuture<Void> other = decrypts.putIfAbsent(entry, decrypting);
+            if (other != null) {
+                // another thread is decrypting this package; use its copy, or retry if it failed
+                other.exceptionally(e -> null).join();
+                continue;
+            }
+            
+            try {
+                // the copy may have been added between the check and claiming the decrypt
+                if (!acquireExisting(entry)) decrypt(source, prefix, entry);
+                return entry;
+            } finally {
+                decrypts.remove(entry);
+                decrypting.complete(null);
+            }
+        }
+    }
+    
+    /**
+     * Unpin an entry returned by {@link #acquire(Path)}. Once no thread holds
+     * it, the entry may be evicted again.
+     * 
+     * @param entry the decrypted package
+     * @throws IOException if entries over the cap cannot be deleted
+     */
+    public synchronized void release(Path entry) throws IOException {
+        Integer count = pins.get(entry);
+        if (count == null) return;
+        
+        if (count > 1) {
+            pins.put(entry, count - 1);
+        } else {
+            pins.remove(entry);
+            // eviction may have been held back while the entry was in use
+            evict(null);
+        }
+    }
+    
+    private synchronized boolean acquireExisting(Path entry) {
+        if (!entries.containsKey(entry) || !Files.isRegularFile(entry)) return false;
+        
+        entries.get(entry); // mark as recently used
+        touch(entry);
+        pins.merge(entry, 1, Integer::sum);
+        return true;
+    }
+    
+    private void decrypt(Path source, String prefix, Path entry) throws IOException {
+        // decrypt outside the lock so other packages can be served meanwhile
+        Path temp = Files.createTempFile(directory, "l2pkg_", ".tmp");
+        try {
+            L2Decryptor.decryptFile(source, temp);
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        
+        synchronized (this) {
+            pins.merge(entry, 1, Integer::sum);
+            removeStale(prefix, entry);
+            
+            Long previous = entries.put(entry, Files.size(entry));
+            totalBytes += entries.get(entry) - (previous != null ? previous : 0);
+            evict(entry);
+        }
+    }
+    
+    /**
+     * Remove older copies of the same source file, except those still in use.
+     */
+    private void removeStale(String prefix, Path current) throws IOException {
+        Iterator<Map.Entry<Path, Long>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Long> e = it.next();
+            Path path = e.getKey();
+            if (!path.equals(current) && !pins.containsKey(path) && path.getFileName().toString().startsWith(prefix)) {
+                Files.deleteIfExists(path);
+                totalBytes -= e.getValue();
+                it.remove();
+            }
+        }
+    }
+    
+    /**
+     * Delete least recently used entries until the cache fits its cap. The
+     * entry that was just added and entries in use are always kept.
+     */
+    private void evict(Path keep) throws IOException {
+        Iterator<Map.Entry<Path, Long>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<Path, Long> e = it.next();
+            if (e.getKey().equals(keep) || pins.containsKey(e.getKey())) continue;
+            
+            Files.deleteIfExists(e.getKey());
+            totalBytes -= e.getValue();
+            it.remove();
+        }
+    }
+    
+    private static void touch(Path entry) {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // only affects eviction order in later runs
+        }
+    }
+    
+    private static FileTime lastUsed(Path entry) {
+        try {
+            return Files.getLastModifiedTime(entry);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+    
+    /**
+     * Stable short hash of the source file's absolute path.
+     */
+    private static String pathHash(Path source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(source.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                sb.append(String.format("%02x", hash[i]));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package io.github.l2terrain.crypto;
+
+import net.shrimpworks.unreal.packages.PackageReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only channel presenting the decrypted payload of an L2 encrypted package.
+ * 
+ * <p>The 28-byte "Lineage2VerXXX" header is hidden, so position 0 of this channel
+ * is the first byte of the Unreal package. Bytes are XOR-decrypted as they are read,
+ * at any position, so the channel can be handed straight to a
+ * {@link PackageReader} without writing a decrypted
+ * copy to disk.</p>
+ * 
+ * <p>Positional reads ({@link #read(ByteBuffer, long)}) do not touch the
+ * channel's position, so several threads can read the same package at once.</p>
+ */
+public final class L2DecryptingChannel implements PackageReader.PositionalChannel {
+    
+    private final FileChannel source;
+    private final int key;
+    private final long size;
+    
+    private long position;
+    
+    private L2DecryptingChannel(FileChannel source, int key) throws IOException {
+        this.source = source;
+        this.key = key;
+        this.size = source.size() - L2Decryptor.HEADER_SIZE;
+    }
+    
+    /**
+     * Open an L2 encrypted file for decrypt-on-read access.
+     * 
+     * @param input the encrypted package file
+     * @return a channel positioned at the start of the decrypted package
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if input is not a valid L2 encrypted file
+     */
+    public static L2DecryptingChannel open(Path input) throws IOException {
+        FileChannel source = FileChannel.open(input, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(L2Decryptor.HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (source.read(header, header.position()) < 0) {
+                    throw new IOException("Failed to read L2 header");
+                }
+            }
+            
+            int version = L2Decryptor.getVersion(header.array());
+            if (version < 0) {
+                throw new IllegalArgumentException("Not a valid L2 encrypted file");
+            }
+            
+            int xorKey = L2Decryptor.getKeyForVersion(version, input.getFileName().toString());
+            return new L2DecryptingChannel(source, xorKey);
+        } catch (IOException | RuntimeException e) {
+            source.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Get the XOR key used by this channel.
+     */
+    public int key() {
+        return key;
+    }
+    
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int read = read(dst, position);
+        if (read > 0) position += read;
+        return read;
+    }
+    
+    @Override
+    public int read(ByteBuffer dst, long pos) throws IOException {
+        ensureOpen();
+        if (pos >= size) return -1;
+        
+        int start = dst.position();
+        int read = source.read(dst, L2Decryptor.HEADER_SIZE + pos);
+        if (read <= 0) return read;
+        
+        L2Decryptor.xor(dst, start, start + read, key);
+        return read;
+    }
+    
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+    
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Position must be non-negative");
+        }
+        this.position = newPosition;
+        return this;
+    }
+    
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+    
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+    
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+    
+    @Override
+    public boolean isOpen() {
+        return source.isOpen();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+    
+    private void ensureOpen() throws ClosedChannelException {
+        if (!source.isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -1,9 +1,14 @@
 package io.github.l2terrain.crypto;
 
 import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Decryptor for Lineage 2 encrypted packages.
@@ -25,6 +30,12 @@ public final class L2Decryptor {
     /** Fixed XOR key for Ver 111 */
     private static final int VER_111_KEY = 0xAC;
     
+    /** Buffer size used when decrypting a whole file */
+    private static final int FILE_BUFFER_SIZE = 1 << 20;
+    
+    /** View of a byte[] as unaligned longs, for XOR-ing 8 bytes at a time */
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    
     private L2Decryptor() {
         // Utility class - prevent instantiation
     }
@@ -98,11 +109,63 @@ public final class L2Decryptor {
      * @param key the XOR key
      */
     public static void decrypt(byte[] data, int key) {
-        for (int i = HEADER_SIZE; i < data.length; i++) {
+        if (data.length > HEADER_SIZE) {
+            xor(data, HEADER_SIZE, data.length, key);
+        }
+    }
+    
+    /**
+     * XOR a range of bytes with a single-byte key, in place, 8 bytes at a time.
+     * 
+     * @param data the data to modify
+     * @param from first index (inclusive)
+     * @param to last index (exclusive)
+     * @param key the XOR key
+     */
+    public static void xor(byte[] data, int from, int to, int key) {
+        long wideKey = wideKey(key);
+        int i = from;
+        for (int end = to - 7; i < end; i += 8) {
+            LONG_VIEW.set(data, i, (long) LONG_VIEW.get(data, i) ^ wideKey);
+        }
+        for (; i < to; i++) {
             data[i] = (byte) (data[i] ^ key);
         }
     }
     
+    /**
+     * XOR a range of a buffer with a single-byte key, in place, 8 bytes at a
+     * time. Uses absolute access, so the buffer's position is not changed.
+     * 
+     * @param buffer the buffer to modify
+     * @param from first index (inclusive)
+     * @param to last index (exclusive)
+     * @param key the XOR key
+     */
+    public static void xor(ByteBuffer buffer, int from, int to, int key) {
+        if (buffer.hasArray()) {
+            int offset = buffer.arrayOffset();
+            xor(buffer.array(), offset + from, offset + to, key);
+            return;
+        }
+        
+        long wideKey = wideKey(key);
+        int i = from;
+        for (int end = to - 7; i < end; i += 8) {
+            buffer.putLong(i, buffer.getLong(i) ^ wideKey);
+        }
+        for (; i < to; i++) {
+            buffer.put(i, (byte) (buffer.get(i) ^ key));
+        }
+    }
+    
+    /**
+     * Repeat the key byte in all 8 bytes of a long.
+     */
+    private static long wideKey(int key) {
+        return (key & 0xFFL) * 0x0101010101010101L;
+    }
+    
     /**
      * Decrypt L2 package data in-place, auto-detecting version and deriving key.
      * 
@@ -128,16 +191,19 @@ public final class L2Decryptor {
      * @throws IllegalArgumentException if input is not a valid L2 encrypted file
      */
     public static void decryptFile(Path input, Path output) throws IOException {
-        try (InputStream in = new BufferedInputStream(Files.newInputStream(input));
-             OutputStream out = new BufferedOutputStream(Files.newOutputStream(output))) {
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE,
+                 StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
             
             // Read and validate header
-            byte[] header = new byte[HEADER_SIZE];
-            if (in.read(header) != HEADER_SIZE) {
-                throw new IOException("Failed to read L2 header");
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (in.read(header) < 0) {
+                    throw new IOException("Failed to read L2 header");
+                }
             }
             
-            String headerStr = parseHeader(header);
+            String headerStr = parseHeader(header.array());
             if (headerStr == null) {
                 throw new IllegalArgumentException("Not a valid L2 encrypted file");
             }
@@ -145,14 +211,15 @@ public final class L2Decryptor {
             int version = Integer.parseInt(headerStr.substring(11));
             int xorKey = getKeyForVersion(version, input.getFileName().toString());
             
-            // Decrypt and write
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = in.read(buffer)) != -1) {
-                for (int i = 0; i < bytesRead; i++) {
-                    buffer[i] = (byte) (buffer[i] ^ xorKey);
+            // Decrypt and write in large chunks through a direct buffer
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(FILE_BUFFER_SIZE, Math.max(1, in.size())));
+            while (in.read(buffer) >= 0 || buffer.position() > 0) {
+                xor(buffer, 0, buffer.position(), xorKey);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
                 }
-                out.write(buffer, 0, bytesRead);
+                buffer.clear();
             }
         }
     }
@@ -1,10 +1,11 @@
 package io.github.l2terrain.extractors;
 
-import io.github.l2terrain.crypto.L2Decryptor;
+import io.github.l2terrain.model.CompressedTexture;
+import io.github.l2terrain.utils.ContentDeduplicator;
+import io.github.l2terrain.utils.ParallelExecutor;
 import io.github.l2terrain.utils.TextureUtils;
 import io.github.l2terrain.utils.UnrealPackageUtils;
 import net.shrimpworks.unreal.packages.Package;
-import net.shrimpworks.unreal.packages.PackageReader;
 import net.shrimpworks.unreal.packages.entities.Export;
 import net.shrimpworks.unreal.packages.entities.ExportedEntry;
 import net.shrimpworks.unreal.packages.entities.ExportedObject;
@@ -17,18 +18,55 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 public class DetailMapExtractor {
     private static final Pattern DECO_PATTERN = Pattern.compile("(\\d+)_(\\d+)_[Dd]eco(\\d+)", Pattern.CASE_INSENSITIVE);
+    private int threads = 1;
+    private boolean keepCompressed = false;
+    private int mipLevel = 0;
+    private int maxSize = 0;
+    private ContentDeduplicator deduplicator;
+
+    /** Formats extractTextureByFormat can decode */
+    private static final Set<TextureBase.Format> DECODABLE_FORMATS = EnumSet.of(
+        TextureBase.Format.DXT1, TextureBase.Format.DXT3, TextureBase.Format.RGBA8, TextureBase.Format.PALETTE_8_BIT);
+
+    /** A detail map layer: decoded, or its original DXT data when kept compressed (image is then null). */
+    public static class DetailMap {
+        public final BufferedImage image;
+        public final CompressedTexture compressed;
+        public final ContentDeduplicator.Content content; // with deduplication; image and compressed are both null for a copy
+        public DetailMap(BufferedImage image, CompressedTexture compressed) { this(image, compressed, null); }
+        public DetailMap(BufferedImage image, CompressedTexture compressed, ContentDeduplicator.Content content) {
+            this.image = image; this.compressed = compressed; this.content = content;
+        }
+    }
 
     public Map<String, Map<Integer, BufferedImage>> extractAllWithLayerNumbers(Path inputFolder) throws IOException {
         Map<String, Map<Integer, BufferedImage>> results = new TreeMap<>();
+        extractAll(inputFolder).forEach((tile, layers) -> layers.forEach((layerNum, map) -> {
+            if (map.image != null) results.computeIfAbsent(tile, k -> new TreeMap<>()).put(layerNum, map.image);
+        }));
+        return results;
+    }
+
+    public Map<String, Map<Integer, DetailMap>> extractAll(Path inputFolder) throws IOException {
+        Map<String, Map<Integer, DetailMap>> results = new TreeMap<>();
         List<Path> decoPackages = new ArrayList<>();
         try (var stream = Files.list(inputFolder)) {
             stream.filter(p -> {
@@ -41,57 +79,141 @@ public class DetailMapExtractor {
             return results;
         }
         System.out.println("Found " + decoPackages.size() + " DecoLayer package(s)");
-        for (Path pkg : decoPackages) {
-            System.out.println("Processing: " + pkg.getFileName());
-            extractFromPackage(pkg, results);
-        }
+        // Find every copy of each tile layer in parallel; later packages win, so their copies are tried first.
+        // Packages holding layers stay open for the first round of decoding, and are only reopened for fallbacks
+        List<List<Candidate>> found = new ArrayList<>(Collections.nCopies(decoPackages.size(), null));
+        Map<Path, Package> open = new ConcurrentHashMap<>();
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        Map<LayerKey, DetailMap> decoded = new ConcurrentHashMap<>();
+        try {
+            ParallelExecutor.forEach(threads, IntStream.range(0, decoPackages.size()).boxed().toList(), i -> {
+                Path path = decoPackages.get(i);
+                System.out.println("Processing: " + path.getFileName());
+                try {
+                    Package pkg = UnrealPackageUtils.openPackage(path);
+                    try { found.set(i, findLayers(path, pkg)); }
+                    finally { if (found.get(i) == null || found.get(i).isEmpty()) pkg.close(); else open.put(path, pkg); }
+                } catch (IOException e) { failure.compareAndSet(null, e); }
+            });
+            if (failure.get() != null) throw failure.get();
+            Map<LayerKey, Deque<Candidate>> candidates = new LinkedHashMap<>();
+            for (int i = found.size() - 1; i >= 0; i--) {
+                List<Candidate> layers = found.get(i);
+                for (int j = layers.size() - 1; j >= 0; j--) { candidates.computeIfAbsent(layers.get(j).key(), k -> new ArrayDeque<>()).add(layers.get(j)); }
+            }
+            // Decode only the winning copy of each layer, falling back to the next one where it fails
+            while (!candidates.isEmpty()) {
+                Map<Path, List<Candidate>> byPackage = new LinkedHashMap<>();
+                for (Deque<Candidate> copies : candidates.values()) {
+                    Candidate next = copies.poll();
+                    byPackage.computeIfAbsent(next.pkg(), k -> new ArrayList<>()).add(next);
+                }
+                ParallelExecutor.forEach(threads, List.copyOf(byPackage.entrySet()), entry -> {
+                    Package pkg = open.remove(entry.getKey());
+                    try {
+                        if (pkg == null) { extractFromPackage(entry.getKey(), entry.getValue(), decoded); }
+                        else { try (pkg) { extractFromPackage(pkg, entry.getValue(), decoded); } }
+                    } catch (IOException e) { failure.compareAndSet(null, e); }
+                });
+                closeAll(open);
+                if (failure.get() != null) throw failure.get();
+                candidates.keySet().removeAll(decoded.keySet());
+                candidates.values().removeIf(Deque::isEmpty);
+            }
+        } finally { closeAll(open); }
+        decoded.forEach((key, map) -> results.computeIfAbsent(key.tileName(), k -> new TreeMap<>()).put(key.layerNum(), map));
         return results;
     }
 
-    private void extractFromPackage(Path packagePath, Map<String, Map<Integer, BufferedImage>> results) throws IOException {
-        Path tempFile = Files.createTempFile("l2deco_", ".utx");
-        try {
-            L2Decryptor.decryptFile(packagePath, tempFile);
-            try (Package pkg = new Package(new PackageReader(tempFile))) {
-                for (Export export : pkg.exports) {
-                    String className = export.classIndex.get().name().name;
-                    if (!className.equals("Texture")) continue;
-                    String texName = export.name.name;
-                    Matcher matcher = DECO_PATTERN.matcher(texName);
-                    if (!matcher.matches()) continue;
-                    int tileX = Integer.parseInt(matcher.group(1));
-                    int tileY = Integer.parseInt(matcher.group(2));
-                    int layerNum = Integer.parseInt(matcher.group(3));
-                    String tileName = String.format("%d_%d", tileX, tileY);
-                    try {
-                        ExportedObject obj = null;
-                        if (export instanceof ExportedObject eo) { obj = eo; }
-                        else if (export instanceof ExportedEntry ee) { obj = ee.asObject(); }
-                        if (obj == null) continue;
-                        var texObj = pkg.object(obj);
-                        if (!(texObj instanceof Texture tex)) continue;
-                        TextureBase.Format format = tex.format();
-                        int width = 512, height = 512;
-                        for (Property prop : tex.properties) {
-                            if (prop.name.name.equals("USize") && prop instanceof IntegerProperty ip) { width = ip.value; }
-                            else if (prop.name.name.equals("VSize") && prop instanceof IntegerProperty ip) { height = ip.value; }
-                        }
-                        byte[] exportData = UnrealPackageUtils.readExportData(tex, obj);
-                        BufferedImage image = extractTextureByFormat(exportData, format, width, height);
-                        if (image == null) { System.out.println("    Warning: Could not extract " + texName); continue; }
-                        results.computeIfAbsent(tileName, k -> new TreeMap<>()).put(layerNum, image);
-                    } catch (Exception e) { System.out.println("    Error extracting " + texName + ": " + e.getMessage()); }
+    public void setThreads(int threads) { this.threads = threads; }
+
+    /** Keep DXT layers as their original block data (for .dds output); other formats are still decoded. */
+    public void setKeepCompressed(boolean keepCompressed) { this.keepCompressed = keepCompressed; }
+
+    /** Decode a smaller mip level instead of the full-size image, for previews (0 = full size / no limit). */
+    public void setMipSelection(int mipLevel, int maxSize) { this.mipLevel = mipLevel; this.maxSize = maxSize; }
+
+    /** Hash layers before decoding them, and return layers whose content was already extracted as copies (null = decode every layer). */
+    public void setDeduplicator(ContentDeduplicator deduplicator) { this.deduplicator = deduplicator; }
+
+    /** A tile layer, which several packages may hold a copy of. */
+    private record LayerKey(String tileName, int layerNum) { }
+
+    /** A detail map texture found in a package's export table, not yet loaded. */
+    private record Candidate(Path pkg, int exportIndex, String texName, LayerKey key) { }
+
+    /** List a package's detail map textures, in export order, from its export table alone. */
+    private List<Candidate> findLayers(Path packagePath, Package pkg) {
+        List<Candidate> layers = new ArrayList<>();
+        for (Export export : pkg.exportsOfClass("Texture")) {
+            String texName = export.name.name;
+            Matcher matcher = DECO_PATTERN.matcher(texName);
+            if (!matcher.matches()) continue;
+            String tileName = String.format("%d_%d", Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+            layers.add(new Candidate(packagePath, export.index, texName, new LayerKey(tileName, Integer.parseInt(matcher.group(3)))));
+        }
+        return layers;
+    }
+
+    private static void closeAll(Map<Path, Package> packages) {
+        for (Package pkg : packages.values()) {
+            try { pkg.close(); } catch (IOException e) { /* nothing left to read from it */ }
+        }
+        packages.clear();
+    }
+
+    private void extractFromPackage(Path packagePath, List<Candidate> layers, Map<LayerKey, DetailMap> results) throws IOException {
+        try (Package pkg = UnrealPackageUtils.openPackage(packagePath)) { extractFromPackage(pkg, layers, results); }
+    }
+
+    private void extractFromPackage(Package pkg, List<Candidate> layers, Map<LayerKey, DetailMap> results) {
+        for (Candidate layer : layers) {
+            String texName = layer.texName();
+            try {
+                Export export = pkg.exports[layer.exportIndex()];
+                ExportedObject obj = null;
+                if (export instanceof ExportedObject eo) { obj = eo; }
+                else if (export instanceof ExportedEntry ee) { obj = ee.asObject(); }
+                if (obj == null) continue;
+                var texObj = pkg.object(obj, TextureUtils.TEXTURE_PROPERTIES);
+                if (!(texObj instanceof Texture tex)) continue;
+                TextureBase.Format format = tex.format();
+                int width = 512, height = 512;
+                for (Property prop : tex.properties) {
+                    if (prop.name.name.equals("USize") && prop instanceof IntegerProperty ip) { width = ip.value; }
+                    else if (prop.name.name.equals("VSize") && prop instanceof IntegerProperty ip) { height = ip.value; }
                 }
-            }
-        } finally { Files.deleteIfExists(tempFile); }
+                Texture.MipMap[] mips = TextureUtils.mipMaps(tex);
+                int level = TextureUtils.selectMipLevel(mips, width, height, mipLevel, maxSize);
+                width = Math.max(1, width >> level); height = Math.max(1, height >> level);
+                boolean compressedOutput = keepCompressed && CompressedTexture.isSupported(format);
+                ContentDeduplicator.Content content = null;
+                if (deduplicator != null && (compressedOutput || DECODABLE_FORMATS.contains(format))) {
+                    content = deduplicator.content(mips, format, level, width, height, compressedOutput);
+                    if (content != null && deduplicator.isCopy(content)) { results.put(layer.key(), new DetailMap(null, null, content)); continue; }
+                }
+                DetailMap map = null;
+                if (compressedOutput) {
+                    CompressedTexture compressed = CompressedTexture.read(format, mips, level);
+                    if (compressed != null) { map = new DetailMap(null, compressed, content); }
+                }
+                if (map == null) {
+                    BufferedImage image = extractTextureByFormat(tex, mips, obj, format, level, width, height);
+                    if (image == null) { System.out.println("    Warning: Could not extract " + texName); continue; }
+                    map = new DetailMap(image, null, content);
+                }
+                if (content != null) { deduplicator.decoded(content); }
+                results.put(layer.key(), map);
+            } catch (Exception e) { System.out.println("    Error extracting " + texName + ": " + e.getMessage()); }
+        }
     }
 
-    private BufferedImage extractTextureByFormat(byte[] exportData, TextureBase.Format format, int width, int height) {
+    private BufferedImage extractTextureByFormat(Texture tex, Texture.MipMap[] mips, ExportedObject obj, TextureBase.Format format, int level, int width, int height) throws IOException {
         return switch (format) {
-            case DXT1 -> TextureUtils.extractDXT1(exportData, width, height);
-            case DXT3 -> TextureUtils.extractDXT3(exportData, width, height);
-            case RGBA8 -> TextureUtils.extractRGBA8(exportData, width, height);
-            case PALETTE_8_BIT -> TextureUtils.extractP8(exportData, width, height);
+            case DXT1 -> TextureUtils.extractDXT1(tex, mips, obj, level, width, height);
+            case DXT3 -> TextureUtils.extractDXT3(tex, mips, obj, level, width, height);
+            case RGBA8 -> TextureUtils.extractRGBA8(tex, mips, obj, level, width, height);
+            case PALETTE_8_BIT -> TextureUtils.extractP8(tex, mips, obj, level, width, height);
             default -> { System.out.println("    Unsupported format: " + format); yield null; }
         };
     }
@@ -1,20 +1,18 @@
 package io.github.l2terrain.extractors;
 
-import io.github.l2terrain.crypto.L2Decryptor;
 import io.github.l2terrain.model.TerrainTile;
 import io.github.l2terrain.model.TileCoordinates;
+import io.github.l2terrain.utils.TextureUtils;
+import io.github.l2terrain.utils.UnrealPackageUtils;
 import net.shrimpworks.unreal.packages.Package;
-import net.shrimpworks.unreal.packages.PackageReader;
 import net.shrimpworks.unreal.packages.entities.ExportedObject;
 import net.shrimpworks.unreal.packages.entities.objects.Texture;
 import net.shrimpworks.unreal.packages.entities.properties.IntegerProperty;
 import net.shrimpworks.unreal.packages.entities.properties.Property;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.file.Files;
 import java.nio.file.Path;
 /**
  * Extractor for G16 heightmap textures from Lineage 2 .utx packages.
@@ -49,35 +47,20 @@ public class HeightmapExtractor {
             throw new IOException("Cannot parse coordinates from filename: " + filename);
         }
         
-        // Decrypt L2 file to temp
-        Path tempFile = Files.createTempFile("l2_", ".utx");
-        try {
-            L2Decryptor.decryptFile(file, tempFile);
-            return extractFromDecryptedPackage(tempFile, coords, filename);
-        } finally {
-            Files.deleteIfExists(tempFile);
-        }
+        return extractFromPackage(file, coords, filename);
     }
     
     /**
-     * Extract G16 texture from a decrypted package.
+     * Extract G16 texture from an encrypted package.
      */
-    private TerrainTile extractFromDecryptedPackage(Path packagePath, TileCoordinates coords, String sourceFilename) throws IOException {
-        try (Package pkg = new Package(new PackageReader(packagePath))) {
-            for (ExportedObject obj : pkg.objects) {
-                if (obj == null) continue;
-                
-                String cls = obj.classIndex.get().name().name;
-                if (!cls.equals("Texture")) continue;
-                
-                net.shrimpworks.unreal.packages.entities.objects.Object texObj = pkg.object(obj);
+    private TerrainTile extractFromPackage(Path packagePath, TileCoordinates coords, String sourceFilename) throws IOException {
+        try (Package pkg = UnrealPackageUtils.openPackage(packagePath)) {
+            for (ExportedObject obj : pkg.objectsOfClass("Texture")) {
+                net.shrimpworks.unreal.packages.entities.objects.Object texObj = pkg.object(obj, TextureUtils.TEXTURE_PROPERTIES);
                 if (!(texObj instanceof Texture tex)) continue;
-                if (!tex.format().name().equals("G16")) continue;
-                
-                int[] dimensions = getTextureDimensions(tex);
-                int[] heightData = extractHeightData(tex, obj, dimensions[0] * dimensions[1]);
+                if (!isHeightmap(tex)) continue;
                 
-                return new TerrainTile(coords, dimensions[0], dimensions[1], heightData, sourceFilename);
+                return extractTile(tex, obj, coords, sourceFilename);
             }
         } catch (IOException e) {
             throw e;
@@ -88,6 +71,30 @@ public class HeightmapExtractor {
         throw new IOException("No G16 texture found in file: " + sourceFilename);
     }
     
+    /**
+     * Check whether a texture holds heightmap data (G16 format).
+     */
+    boolean isHeightmap(Texture tex) {
+        return tex.format().name().equals("G16");
+    }
+    
+    /**
+     * Build a terrain tile from an already loaded G16 texture.
+     * 
+     * @param tex the G16 texture object
+     * @param obj the texture's export
+     * @param coords the tile coordinates
+     * @param sourceFilename name of the package the texture came from
+     * @return the terrain tile with height data
+     * @throws IOException if the height data cannot be read
+     */
+    TerrainTile extractTile(Texture tex, ExportedObject obj, TileCoordinates coords, String sourceFilename) throws IOException {
+        int[] dimensions = getTextureDimensions(tex);
+        int[] heightData = extractHeightData(tex, obj, dimensions[0] * dimensions[1]);
+        
+        return new TerrainTile(coords, dimensions[0], dimensions[1], heightData, sourceFilename);
+    }
+    
     /**
      * Get texture dimensions from properties.
      * @return [width, height]
@@ -108,41 +115,46 @@ public class HeightmapExtractor {
     }
     
     /**
-     * Extract height data from texture export.
-     * Uses reflection to access the package reader (unfortunately necessary).
+     * Extract height data from a texture, located via its mip headers.
+     * Falls back to searching the export for the G16 marker if the headers
+     * cannot be used.
      */
     private int[] extractHeightData(Texture tex, ExportedObject obj, int pixelCount) throws IOException {
-        try {
-            // Access reader via reflection (library doesn't expose raw data access)
-            Field readerField = net.shrimpworks.unreal.packages.entities.objects.Object.class.getDeclaredField("reader");
-            readerField.setAccessible(true);
-            PackageReader reader = (PackageReader) readerField.get(tex);
-            
-            // Read export data
-            reader.moveTo(obj.pos);
-            byte[] exportData = new byte[obj.size];
-            reader.readBytes(exportData, 0, obj.size);
-            
-            // Find G16 marker
-            int dataOffset = findG16DataOffset(exportData);
-            if (dataOffset < 0) {
-                throw new IOException("Cannot find G16 marker in export");
-            }
-            
-            // Parse height data as unsigned 16-bit values
-            int[] heightData = new int[pixelCount];
-            ByteBuffer buffer = ByteBuffer.wrap(exportData, dataOffset, pixelCount * 2);
-            buffer.order(ByteOrder.LITTLE_ENDIAN);
-            
-            for (int i = 0; i < pixelCount; i++) {
-                heightData[i] = buffer.getShort() & 0xFFFF;
-            }
-            
-            return heightData;
-            
-        } catch (ReflectiveOperationException e) {
-            throw new IOException("Failed to access texture data via reflection", e);
+        ByteBuffer mipData = TextureUtils.readMipData(tex, obj, pixelCount * 2);
+        if (mipData != null) {
+            return toHeights(mipData, 0, pixelCount);
         }
+        
+        return scanHeightData(tex, obj, pixelCount);
+    }
+    
+    /**
+     * Extract height data by searching the whole export for the G16 marker.
+     */
+    private int[] scanHeightData(Texture tex, ExportedObject obj, int pixelCount) throws IOException {
+        byte[] exportData = UnrealPackageUtils.toArray(tex.exportData());
+        
+        // Find G16 marker
+        int dataOffset = findG16DataOffset(exportData);
+        if (dataOffset < 0) {
+            throw new IOException("Cannot find G16 marker in export");
+        }
+        
+        return toHeights(ByteBuffer.wrap(exportData), dataOffset, pixelCount);
+    }
+    
+    /**
+     * Parse height data as unsigned 16-bit little-endian values.
+     */
+    private int[] toHeights(ByteBuffer data, int offset, int pixelCount) {
+        int[] heightData = new int[pixelCount];
+        ByteBuffer buffer = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        
+        for (int i = 0; i < pixelCount; i++) {
+            heightData[i] = buffer.getShort(offset + i * 2) & 0xFFFF;
+        }
+        
+        return heightData;
     }
     
     /**
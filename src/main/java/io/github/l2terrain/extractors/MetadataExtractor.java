@@ -3,6 +3,10 @@ package io.github.l2terrain.extractors;
 import io.github.l2terrain.cache.TerrainDataCache;
 import io.github.l2terrain.cache.TerrainDataCache.DecoLayerInfo;
 import io.github.l2terrain.cache.TerrainDataCache.SplatmapInfo;
+import io.github.l2terrain.model.ExtractionManifest;
+import io.github.l2terrain.model.ExtractionManifest.TileFiles;
+import io.github.l2terrain.utils.MapPass;
+import io.github.l2terrain.utils.ParallelExecutor;
 
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -21,14 +25,52 @@ import java.util.regex.Pattern;
  */
 public class MetadataExtractor {
     
+    /** Tile directory name, e.g. "16_25" */
+    private static final Pattern TILE_NAME = Pattern.compile("(\\d+)_(\\d+)");
+    
+    /** Detailmap file name, e.g. "16_25_detailmap_3.png"; group 1 is the layer number */
+    private static final Pattern DETAILMAP_FILE = Pattern.compile("\\d+_\\d+_detailmap_(\\d+)\\.(png|dds)");
+    
+    /** Splatmap file name, e.g. "16_25_splatmap0_layer0.png"; group 1 is the splatmap index */
+    private static final Pattern SPLATMAP_FILE = Pattern.compile("\\d+_\\d+_splatmap(\\d+)_layer\\d+\\.(png|dds)");
+    
     private TerrainDataCache cache;
     
+    private int threads = ParallelExecutor.defaultThreads();
+    
+    private Path cacheSnapshot;
+    
+    /**
+     * Set the number of map files to process at a time while building the cache.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+    
+    /**
+     * Keep the global cache in a snapshot file, so later runs only re-scan
+     * maps that changed.
+     * 
+     * @see TerrainDataCache#buildCache(List, List, int, Path)
+     */
+    public void setCacheSnapshot(Path cacheSnapshot) {
+        this.cacheSnapshot = cacheSnapshot;
+    }
+    
     /**
      * Build the global cache from all map files.
      */
     public void buildCache(Path mapsFolder) throws IOException {
+        buildCache(mapsFolder, List.of());
+    }
+    
+    /**
+     * Build the global cache from all map files, handing each opened map to
+     * other visitors too (e.g. static mesh extraction) so it is only opened once.
+     */
+    public void buildCache(Path mapsFolder, List<MapPass.Visitor> otherVisitors) throws IOException {
         cache = new TerrainDataCache();
-        cache.buildCache(mapsFolder);
+        cache.buildCache(MapPass.findMapFiles(mapsFolder), otherVisitors, threads, cacheSnapshot);
     }
     
     /**
@@ -49,6 +91,19 @@ public class MetadataExtractor {
      * Generate metadata for all tiles based on extracted files in the output folder.
      */
     public List<TileMetadata> generateAllMetadata(Path outputFolder) throws IOException {
+        return generateAllMetadata(outputFolder, null);
+    }
+    
+    /**
+     * Generate metadata for all tiles, taking the extracted files from the
+     * manifest filled in by the earlier stages. Files of a kind the manifest
+     * does not record (because its stage did not run in this process) are
+     * found by listing the tile directories instead.
+     * 
+     * @param outputFolder the output folder holding the tile directories
+     * @param manifest files extracted in this process, or null to list everything
+     */
+    public List<TileMetadata> generateAllMetadata(Path outputFolder, ExtractionManifest manifest) throws IOException {
         List<TileMetadata> results = new ArrayList<>();
         
         if (cache == null) {
@@ -56,27 +111,32 @@ public class MetadataExtractor {
         }
         
         // Find all tile directories
-        List<Path> tileDirs = new ArrayList<>();
-        try (var stream = Files.list(outputFolder)) {
-            stream.filter(p -> {
-                if (!Files.isDirectory(p)) return false;
-                String name = p.getFileName().toString();
-                return name.matches("\\d+_\\d+");
-            }).forEach(tileDirs::add);
+        Set<String> tileNames = new TreeSet<>();
+        if (manifest != null) {
+            tileNames.addAll(manifest.tileNames());
+        }
+        if (manifest == null || !manifest.isComplete()) {
+            try (var stream = Files.list(outputFolder)) {
+                stream.filter(Files::isDirectory)
+                    .map(p -> p.getFileName().toString())
+                    .filter(name -> TILE_NAME.matcher(name).matches())
+                    .forEach(tileNames::add);
+            }
         }
         
-        System.out.println("Generating metadata for " + tileDirs.size() + " tile directories...");
+        System.out.println("Generating metadata for " + tileNames.size() + " tile directories...");
         
-        for (Path tileDir : tileDirs) {
+        for (String tileName : tileNames) {
+            Path tileDir = outputFolder.resolve(tileName);
             try {
-                TileMetadata meta = generateTileMetadata(tileDir);
+                TileMetadata meta = generateTileMetadata(tileName, tileFiles(tileDir, manifest));
                 if (meta != null) {
                     Path metaFile = tileDir.resolve(String.format("%d_%d_metadata.txt", meta.tileX, meta.tileY));
                     writeMetadata(meta, metaFile);
                     results.add(meta);
                 }
             } catch (Exception e) {
-                System.err.println("  Error generating metadata for " + tileDir.getFileName() + ": " + e.getMessage());
+                System.err.println("  Error generating metadata for " + tileName + ": " + e.getMessage());
             }
         }
         
@@ -84,11 +144,51 @@ public class MetadataExtractor {
     }
     
     /**
-     * Generate metadata for a single tile based on its extracted files.
+     * Get the layer files of a tile, from the manifest where it records them
+     * and from the tile directory otherwise.
      */
-    private TileMetadata generateTileMetadata(Path tileDir) throws IOException {
-        String tileName = tileDir.getFileName().toString();
-        Matcher coordMatcher = Pattern.compile("(\\d+)_(\\d+)").matcher(tileName);
+    private TileFiles tileFiles(Path tileDir, ExtractionManifest manifest) throws IOException {
+        TileFiles recorded = manifest != null ? manifest.files(tileDir.getFileName().toString()) : null;
+        if (recorded == null) recorded = new TileFiles();
+        if (manifest != null && manifest.isComplete()) return recorded;
+        
+        TileFiles listed = listTileFiles(tileDir);
+        if (manifest == null) return listed;
+        
+        TileFiles files = new TileFiles();
+        files.splatmaps.putAll(manifest.recordsSplatmaps() ? recorded.splatmaps : listed.splatmaps);
+        files.detailMaps.putAll(manifest.recordsDetailMaps() ? recorded.detailMaps : listed.detailMaps);
+        return files;
+    }
+    
+    /**
+     * List the splatmap and detail map files in a tile directory, taking
+     * their layer indices from the file names.
+     */
+    private static TileFiles listTileFiles(Path tileDir) throws IOException {
+        TileFiles files = new TileFiles();
+        try (var stream = Files.list(tileDir)) {
+            stream.map(p -> p.getFileName().toString()).forEach(filename -> {
+                // e.g. "16_25_detailmap_3.png" or "16_25_splatmap0_layer0.png" (or .dds)
+                Matcher m = DETAILMAP_FILE.matcher(filename);
+                if (m.matches()) {
+                    files.detailMaps.put(Integer.parseInt(m.group(1)), filename);
+                    return;
+                }
+                m = SPLATMAP_FILE.matcher(filename);
+                if (m.matches()) {
+                    files.splatmaps.put(Integer.parseInt(m.group(1)), filename);
+                }
+            });
+        }
+        return files;
+    }
+    
+    /**
+     * Generate metadata for a single tile from its extracted files.
+     */
+    private TileMetadata generateTileMetadata(String tileName, TileFiles files) {
+        Matcher coordMatcher = TILE_NAME.matcher(tileName);
         if (!coordMatcher.matches()) return null;
         
         int tileX = Integer.parseInt(coordMatcher.group(1));
@@ -96,70 +196,45 @@ public class MetadataExtractor {
         
         TileMetadata meta = new TileMetadata(tileX, tileY);
         
-        // Find all detailmap files and look up their associations from the global cache
-        try (var stream = Files.list(tileDir)) {
-            stream.filter(p -> p.getFileName().toString().contains("_detailmap_"))
-                .forEach(p -> {
-                    String filename = p.getFileName().toString();
-                    // Extract the deco number from filename like "16_25_detailmap_3.png"
-                    Matcher m = Pattern.compile("(\\d+)_(\\d+)_detailmap_(\\d+)\\.png").matcher(filename);
-                    if (m.matches()) {
-                        int decoX = Integer.parseInt(m.group(1));
-                        int decoY = Integer.parseInt(m.group(2));
-                        int layerNum = Integer.parseInt(m.group(3));
-                        
-                        // Try different texture name formats to look up in cache
-                        DecoLayerInfo info = findDecoLayerInfo(decoX, decoY, layerNum);
-                        
-                        TileDecoLayerInfo deco = new TileDecoLayerInfo(layerNum);
-                        if (info != null) {
-                            deco.textureName = info.textureName;
-                            deco.meshName = info.meshName;
-                            deco.meshPackage = info.meshPackage;
-                            deco.sourceTile = info.sourceTile;
-                        }
-                        meta.decoLayers.add(deco);
-                    }
-                });
+        // Look up the associations of each detailmap from the global cache
+        for (Map.Entry<Integer, String> entry : files.detailMaps.entrySet()) {
+            int layerNum = entry.getKey();
+            
+            // Try different texture name formats to look up in cache
+            DecoLayerInfo info = findDecoLayerInfo(tileX, tileY, layerNum);
+            
+            TileDecoLayerInfo deco = new TileDecoLayerInfo(layerNum);
+            deco.fileName = entry.getValue();
+            if (info != null) {
+                deco.textureName = info.textureName;
+                deco.meshName = info.meshName;
+                deco.meshPackage = info.meshPackage;
+                deco.sourceTile = info.sourceTile;
+            }
+            meta.decoLayers.add(deco);
         }
         
-        // Find all splatmap files and look up their associations from the global cache
-        try (var stream = Files.list(tileDir)) {
-            stream.filter(p -> p.getFileName().toString().contains("_splatmap"))
-                .forEach(p -> {
-                    String filename = p.getFileName().toString();
-                    // Extract info from filename like "16_25_splatmap0_layer0.png"
-                    Matcher m = Pattern.compile("(\\d+)_(\\d+)_splatmap(\\d+)_layer(\\d+)\\.png").matcher(filename);
-                    if (m.matches()) {
-                        int splatX = Integer.parseInt(m.group(1));
-                        int splatY = Integer.parseInt(m.group(2));
-                        int splatIndex = Integer.parseInt(m.group(3));
-                        
-                        // Look up splatmaps for this tile from cache
-                        String tileKey = splatX + "_" + splatY;
-                        List<String> tileSplatmaps = cache.getTileSplatmaps(tileKey);
-                        
-                        TileSplatmapInfo layer = new TileSplatmapInfo(splatIndex);
-                        
-                        // Try to find matching splatmap by index
-                        if (splatIndex < tileSplatmaps.size()) {
-                            String splatmapName = tileSplatmaps.get(splatIndex);
-                            SplatmapInfo info = cache.getSplatmapInfo(splatmapName);
-                            if (info != null) {
-                                layer.originalName = splatmapName;
-                                layer.groundTexture = info.groundTexture;
-                            }
-                        }
-                        
-                        meta.splatmapLayers.add(layer);
-                    }
-                });
+        // Look up the ground texture of each splatmap from the global cache
+        List<String> tileSplatmaps = cache.getTileSplatmaps(tileX + "_" + tileY);
+        for (Map.Entry<Integer, String> entry : files.splatmaps.entrySet()) {
+            int splatIndex = entry.getKey();
+            
+            TileSplatmapInfo layer = new TileSplatmapInfo(splatIndex);
+            layer.fileName = entry.getValue();
+            
+            // Try to find matching splatmap by index
+            if (splatIndex < tileSplatmaps.size()) {
+                String splatmapName = tileSplatmaps.get(splatIndex);
+                SplatmapInfo info = cache.getSplatmapInfo(splatmapName);
+                if (info != null) {
+                    layer.originalName = splatmapName;
+                    layer.groundTexture = info.groundTexture;
+                }
+            }
+            
+            meta.splatmapLayers.add(layer);
         }
         
-        // Sort layers by index
-        meta.decoLayers.sort(Comparator.comparingInt(d -> d.layerNum));
-        meta.splatmapLayers.sort(Comparator.comparingInt(s -> s.index));
-        
         return meta;
     }
     
@@ -201,8 +276,8 @@ public class MetadataExtractor {
             writer.println("# Splatmaps (terrain blend layers)");
             writer.println("# Format: splatmap_N=filename,ground_texture_name");
             for (TileSplatmapInfo layer : meta.splatmapLayers) {
-                String splatFile = String.format("%d_%d_splatmap%d_layer%d.png", 
-                    meta.tileX, meta.tileY, layer.index, layer.index);
+                String splatFile = layer.fileName != null ? layer.fileName
+                    : String.format("%d_%d_splatmap%d_layer%d.png", meta.tileX, meta.tileY, layer.index, layer.index);
                 if (layer.groundTexture != null) {
                     writer.printf("splatmap_%d=%s,%s%n", layer.index, splatFile, layer.groundTexture);
                 } else {
@@ -214,7 +289,8 @@ public class MetadataExtractor {
             writer.println("# Detail Layers (DecoLayers)");
             writer.println("# Format: layer_N=detailmap_file,static_mesh_name[,source_tile]");
             for (TileDecoLayerInfo deco : meta.decoLayers) {
-                String detailmapFile = String.format("%d_%d_detailmap_%d.png", meta.tileX, meta.tileY, deco.layerNum);
+                String detailmapFile = deco.fileName != null ? deco.fileName
+                    : String.format("%d_%d_detailmap_%d.png", meta.tileX, meta.tileY, deco.layerNum);
                 if (deco.meshName != null) {
                     if (deco.sourceTile != null && !deco.sourceTile.equals(meta.tileX + "_" + meta.tileY)) {
                         // This deco is used by a different tile - include source info
@@ -252,6 +328,7 @@ public class MetadataExtractor {
      */
     public static class TileSplatmapInfo {
         public int index;
+        public String fileName;  // Extracted file (.png or .dds)
         public String originalName;
         public String groundTexture;
         
@@ -265,6 +342,7 @@ public class MetadataExtractor {
      */
     public static class TileDecoLayerInfo {
         public int layerNum;
+        public String fileName;  // Extracted file (.png or .dds)
         public String textureName;
         public String meshName;
         public String meshPackage;
@@ -1,10 +1,11 @@
 package io.github.l2terrain.extractors;
 
-import io.github.l2terrain.crypto.L2Decryptor;
+import io.github.l2terrain.model.CompressedTexture;
+import io.github.l2terrain.utils.ContentDeduplicator;
+import io.github.l2terrain.utils.ParallelExecutor;
 import io.github.l2terrain.utils.TextureUtils;
 import io.github.l2terrain.utils.UnrealPackageUtils;
 import net.shrimpworks.unreal.packages.Package;
-import net.shrimpworks.unreal.packages.PackageReader;
 import net.shrimpworks.unreal.packages.entities.Export;
 import net.shrimpworks.unreal.packages.entities.ExportedEntry;
 import net.shrimpworks.unreal.packages.entities.ExportedObject;
@@ -20,6 +21,7 @@ import java.nio.file.Path;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 /**
  * Extractor for terrain splatmaps (alpha/blend maps) from T_XX_YY.utx packages.
@@ -44,32 +46,126 @@ public class SplatmapExtractor {
         public final String originalName;
         public final String suffix;
         public final BufferedImage image;
+        /** Original DXT data when kept compressed, in which case image is null */
+        public final CompressedTexture compressed;
+        /** Content hash with deduplication; image and compressed are both null for a copy */
+        public final ContentDeduplicator.Content content;
         public final int width;
         public final int height;
         public final int layerIndex;
         
         public SplatmapInfo(String fileName, String originalName, String suffix, 
                            BufferedImage image, int width, int height, int layerIndex) {
+            this(fileName, originalName, suffix, image, null, width, height, layerIndex);
+        }
+        
+        public SplatmapInfo(String fileName, String originalName, String suffix, BufferedImage image,
+                           CompressedTexture compressed, int width, int height, int layerIndex) {
+            this(fileName, originalName, suffix, image, compressed, null, width, height, layerIndex);
+        }
+        
+        public SplatmapInfo(String fileName, String originalName, String suffix, BufferedImage image,
+                           CompressedTexture compressed, ContentDeduplicator.Content content,
+                           int width, int height, int layerIndex) {
             this.fileName = fileName;
             this.originalName = originalName;
             this.suffix = suffix;
             this.image = image;
+            this.compressed = compressed;
+            this.content = content;
             this.width = width;
             this.height = height;
             this.layerIndex = layerIndex;
         }
     }
     
+    /**
+     * Receives each splatmap as soon as it has been decoded, so it can be
+     * written out and dropped instead of held in memory.
+     */
+    @FunctionalInterface
+    public interface SplatmapSink {
+        /**
+         * @param tileName tile name (e.g., "23_16")
+         * @param splatmap the decoded splatmap
+         */
+        void accept(String tileName, SplatmapInfo splatmap) throws IOException;
+    }
+    
+    /** Formats extractTextureByFormat can decode */
+    private static final Set<TextureBase.Format> DECODABLE_FORMATS = EnumSet.of(
+        TextureBase.Format.DXT1, TextureBase.Format.DXT3, TextureBase.Format.RGBA8,
+        TextureBase.Format.PALETTE_8_BIT, TextureBase.Format.G16);
+    
+    private boolean keepCompressed = false;
+    private int mipLevel = 0;
+    private int maxSize = 0;
+    private ContentDeduplicator deduplicator;
+    private int threads = 1;
+    
+    /**
+     * Keep DXT1/DXT3/DXT5 splatmaps as their original block data (for .dds
+     * output) instead of decoding them. Other formats are still decoded.
+     */
+    public void setKeepCompressed(boolean keepCompressed) {
+        this.keepCompressed = keepCompressed;
+    }
+    
+    /**
+     * Hash splatmaps before decoding them, and return splatmaps whose content
+     * was already extracted as copies instead of decoding them again.
+     * 
+     * @param deduplicator shared deduplicator, or null to decode every splatmap
+     */
+    public void setDeduplicator(ContentDeduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+    }
+    
+    /**
+     * Set the number of threads used to decode the splatmaps of one package.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+    
+    /**
+     * Decode a smaller mip level instead of the full-size image, for previews.
+     * 
+     * @param mipLevel mip level to decode, 0 for full size
+     * @param maxSize largest dimension in pixels, or 0 for no limit
+     * @see TextureUtils#selectMipLevel(Texture.MipMap[], int, int, int, int)
+     */
+    public void setMipSelection(int mipLevel, int maxSize) {
+        this.mipLevel = mipLevel;
+        this.maxSize = maxSize;
+    }
+    
     /**
      * Extract all splatmaps from T_XX_YY.utx packages in the given directory.
      * 
+     * <p>All decoded images are kept in memory; use
+     * {@link #extractAll(Path, SplatmapSink)} to process them one at a time.</p>
+     * 
      * @param inputFolder directory containing T_XX_YY.utx packages
      * @return Map of tile name (e.g., "23_16") to list of splatmap info
      * @throws IOException if extraction fails
      */
     public Map<String, List<SplatmapInfo>> extractAll(Path inputFolder) throws IOException {
         Map<String, List<SplatmapInfo>> results = new TreeMap<>();
-        
+        extractAll(inputFolder, (tileName, splatmap) -> 
+            results.computeIfAbsent(tileName, k -> new ArrayList<>()).add(splatmap));
+        return results;
+    }
+    
+    /**
+     * Extract all splatmaps from T_XX_YY.utx packages in the given directory,
+     * passing each package's splatmaps to the sink as soon as they are decoded.
+     * 
+     * @param inputFolder directory containing T_XX_YY.utx packages
+     * @param sink receives each decoded splatmap, in layer order per tile
+     * @throws IOException if extraction fails
+     */
+    public void extractAll(Path inputFolder, SplatmapSink sink) throws IOException {
         // Find all T_XX_YY.utx packages
         List<Path> tilePackages = new ArrayList<>();
         try (var stream = Files.list(inputFolder)) {
@@ -81,7 +177,7 @@ public class SplatmapExtractor {
         
         if (tilePackages.isEmpty()) {
             System.out.println("No T_XX_YY.utx packages found in " + inputFolder);
-            return results;
+            return;
         }
         
         System.out.println("Found " + tilePackages.size() + " tile packages");
@@ -89,7 +185,7 @@ public class SplatmapExtractor {
         int processed = 0;
         for (Path pkg : tilePackages) {
             try {
-                extractFromPackage(pkg, results);
+                extractFromPackage(pkg, sink);
                 processed++;
                 if (processed % 20 == 0) {
                     System.out.print(".");
@@ -99,11 +195,9 @@ public class SplatmapExtractor {
             }
         }
         System.out.println();
-        
-        return results;
     }
     
-    private void extractFromPackage(Path packagePath, Map<String, List<SplatmapInfo>> results) throws IOException {
+    private void extractFromPackage(Path packagePath, SplatmapSink sink) throws IOException {
         String pkgName = packagePath.getFileName().toString();
         Matcher pkgMatcher = TILE_PKG_PATTERN.matcher(pkgName);
         if (!pkgMatcher.matches()) return;
@@ -112,102 +206,204 @@ public class SplatmapExtractor {
         int tileY = Integer.parseInt(pkgMatcher.group(2));
         String tileName = String.format("%d_%d", tileX, tileY);
         
-        // Decrypt to temp file
-        Path tempFile = Files.createTempFile("l2tile_", ".utx");
-        
-        try {
-            L2Decryptor.decryptFile(packagePath, tempFile);
+        try (Package pkg = UnrealPackageUtils.openPackage(packagePath, threads > 1)) {
+            List<Candidate> candidates = new ArrayList<>();
             
-            try (Package pkg = new Package(new PackageReader(tempFile))) {
-                List<SplatmapInfo> splatmaps = new ArrayList<>();
-                int layerIndex = 0;
+            for (Export export : pkg.exportsOfClass("Texture")) {
+                String texName = export.name.name;
+                String suffix = splatmapSuffix(texName, tileX, tileY);
+                if (suffix == null) continue;
                 
-                for (Export export : pkg.exports) {
-                    String className = export.classIndex.get().name().name;
-                    if (!className.equals("Texture")) continue;
-                    
-                    String texName = export.name.name;
-                    
-                    // Skip the heightmap (just XX_YY without suffix)
-                    if (texName.equals(tileName)) continue;
+                try {
+                    ExportedObject obj = null;
+                    if (export instanceof ExportedObject eo) {
+                        obj = eo;
+                    } else if (export instanceof ExportedEntry ee) {
+                        obj = ee.asObject();
+                    }
                     
-                    // Match splatmap pattern: XX_YY_suffix
-                    Matcher matcher = SPLATMAP_PATTERN.matcher(texName);
-                    if (!matcher.matches()) continue;
+                    if (obj == null) continue;
                     
-                    int x = Integer.parseInt(matcher.group(1));
-                    int y = Integer.parseInt(matcher.group(2));
-                    String suffix = matcher.group(3);
+                    var texObj = pkg.object(obj, TextureUtils.TEXTURE_PROPERTIES);
+                    if (!(texObj instanceof Texture tex)) continue;
                     
-                    // Verify it's for this tile
-                    if (x != tileX || y != tileY) continue;
+                    candidates.add(new Candidate(tex, obj, texName, suffix));
                     
-                    try {
-                        ExportedObject obj = null;
-                        if (export instanceof ExportedObject eo) {
-                            obj = eo;
-                        } else if (export instanceof ExportedEntry ee) {
-                            obj = ee.asObject();
-                        }
-                        
-                        if (obj == null) continue;
-                        
-                        var texObj = pkg.object(obj);
-                        if (!(texObj instanceof Texture tex)) continue;
-                        
-                        // Get texture format and dimensions
-                        TextureBase.Format format = tex.format();
-                        int width = 256, height = 256; // defaults
-                        
-                        for (Property prop : tex.properties) {
-                            if (prop.name.name.equals("USize") && prop instanceof IntegerProperty ip) {
-                                width = ip.value;
-                            } else if (prop.name.name.equals("VSize") && prop instanceof IntegerProperty ip) {
-                                height = ip.value;
-                            }
-                        }
-                        
-                        // Extract the texture using shared utilities
-                        byte[] exportData = UnrealPackageUtils.readExportData(tex, obj);
-                        BufferedImage image = extractTextureByFormat(exportData, format, width, height);
-                        
-                        if (image == null) {
-                            System.out.println("\n    Warning: Could not extract " + texName);
-                            continue;
-                        }
-                        
-                        // Create output filename: XX_YY_splatmapN_layerN.png
-                        String fileName = String.format("%d_%d_splatmap%d_layer%d.png", 
-                            tileX, tileY, layerIndex, layerIndex);
-                        
-                        splatmaps.add(new SplatmapInfo(fileName, texName, suffix, image, width, height, layerIndex));
-                        layerIndex++;
-                        
-                    } catch (Exception e) {
-                        System.out.println("\n    Error extracting " + texName + ": " + e.getMessage());
-                    }
+                } catch (Exception e) {
+                    System.out.println("\n    Error extracting " + texName + ": " + e.getMessage());
                 }
+            }
+            
+            extractSplatmaps(pkg, candidates, tileName, tileX, tileY, sink);
+        }
+    }
+    
+    /**
+     * A splatmap texture of a tile package, loaded but not yet decoded.
+     */
+    record Candidate(Texture tex, ExportedObject obj, String texName, String suffix) { }
+    
+    /**
+     * Decode the splatmaps of one tile package and pass them to the sink in
+     * export order. Layers are numbered by the splatmaps that decoded, so a
+     * texture that cannot be decoded leaves no gap.
+     * 
+     * <p>Splatmaps of a concurrent package are decoded on up to the
+     * configured number of threads, so the decoded splatmaps of the package
+     * are held until they are passed on.</p>
+     * 
+     * @param pkg the open tile package
+     * @param candidates the package's splatmap textures, in export order
+     * @return number of splatmaps passed to the sink
+     */
+    int extractSplatmaps(Package pkg, List<Candidate> candidates, String tileName, int tileX, int tileY,
+                         SplatmapSink sink) {
+        // each splatmap is decoded as if every earlier one succeeded, and renumbered below otherwise
+        Decoded[] decoded = new Decoded[candidates.size()];
+        ParallelExecutor.forEach(pkg.isConcurrent() ? threads : 1, IntStream.range(0, candidates.size()).boxed().toList(), i -> {
+            Candidate c = candidates.get(i);
+            try {
+                decoded[i] = new Decoded(extractSplatmap(c.tex(), c.obj(), c.texName(), c.suffix(), tileX, tileY, i), null);
+            } catch (Exception e) {
+                decoded[i] = new Decoded(null, e);
+            }
+        });
+        
+        int layerIndex = 0;
+        for (int i = 0; i < decoded.length; i++) {
+            Decoded d = decoded[i];
+            try {
+                if (d.error() != null) throw d.error();
+                if (d.info() == null) continue;
                 
-                if (!splatmaps.isEmpty()) {
-                    results.computeIfAbsent(tileName, k -> new ArrayList<>()).addAll(splatmaps);
-                }
+                SplatmapInfo info = withLayerIndex(d.info(), tileX, tileY, layerIndex);
+                layerIndex++;
+                sink.accept(tileName, info);
+                
+            } catch (Exception e) {
+                System.out.println("\n    Error extracting " + candidates.get(i).texName() + ": " + e.getMessage());
+            }
+        }
+        return layerIndex;
+    }
+    
+    private record Decoded(SplatmapInfo info, Exception error) { }
+    
+    private static SplatmapInfo withLayerIndex(SplatmapInfo info, int tileX, int tileY, int layerIndex) {
+        if (info.layerIndex == layerIndex) return info;
+        
+        String extension = info.fileName.substring(info.fileName.lastIndexOf('.') + 1);
+        return new SplatmapInfo(fileName(tileX, tileY, layerIndex, extension), info.originalName, info.suffix,
+            info.image, info.compressed, info.content, info.width, info.height, layerIndex);
+    }
+    
+    /**
+     * Output filename of a splatmap: XX_YY_splatmapN_layerN.ext
+     */
+    private static String fileName(int tileX, int tileY, int layerIndex, String extension) {
+        return String.format("%d_%d_splatmap%d_layer%d.%s", tileX, tileY, layerIndex, layerIndex, extension);
+    }
+    
+    /**
+     * Check whether a texture is a splatmap of the given tile.
+     * 
+     * @param texName the texture export name
+     * @return the splatmap suffix (e.g. "NG1"), or null if the texture is not
+     *         a splatmap of tile (tileX, tileY)
+     */
+    String splatmapSuffix(String texName, int tileX, int tileY) {
+        // Match splatmap pattern: XX_YY_suffix (the heightmap is just XX_YY)
+        Matcher matcher = SPLATMAP_PATTERN.matcher(texName);
+        if (!matcher.matches()) return null;
+        
+        int x = Integer.parseInt(matcher.group(1));
+        int y = Integer.parseInt(matcher.group(2));
+        
+        // Verify it's for this tile
+        if (x != tileX || y != tileY) return null;
+        
+        return matcher.group(3);
+    }
+    
+    /**
+     * Decode a splatmap from an already loaded texture.
+     * 
+     * @return the splatmap, or null if its format could not be decoded
+     */
+    SplatmapInfo extractSplatmap(Texture tex, ExportedObject obj, String texName, String suffix,
+                                 int tileX, int tileY, int layerIndex) throws IOException {
+        // Get texture format and dimensions
+        TextureBase.Format format = tex.format();
+        int width = 256, height = 256; // defaults
+        
+        for (Property prop : tex.properties) {
+            if (prop.name.name.equals("USize") && prop instanceof IntegerProperty ip) {
+                width = ip.value;
+            } else if (prop.name.name.equals("VSize") && prop instanceof IntegerProperty ip) {
+                height = ip.value;
+            }
+        }
+        
+        // Mip headers are parsed once and shared by the helpers below
+        Texture.MipMap[] mips = TextureUtils.mipMaps(tex);
+        
+        // Preview runs decode a smaller mip level
+        int level = TextureUtils.selectMipLevel(mips, width, height, mipLevel, maxSize);
+        width = Math.max(1, width >> level);
+        height = Math.max(1, height >> level);
+        
+        // Content already decoded for another splatmap is not decoded again
+        boolean compressedOutput = keepCompressed && CompressedTexture.isSupported(format);
+        ContentDeduplicator.Content content = null;
+        if (deduplicator != null && (compressedOutput || DECODABLE_FORMATS.contains(format))) {
+            content = deduplicator.content(mips, format, level, width, height, compressedOutput);
+            if (content != null && deduplicator.isCopy(content)) {
+                String fileName = fileName(tileX, tileY, layerIndex, compressedOutput ? "dds" : "png");
+                return new SplatmapInfo(fileName, texName, suffix, null, null, content, width, height, layerIndex);
             }
-        } finally {
-            Files.deleteIfExists(tempFile);
         }
+        
+        SplatmapInfo info = null;
+        
+        // DXT data is passed through untouched when writing .dds
+        if (compressedOutput) {
+            CompressedTexture compressed = CompressedTexture.read(format, mips, level);
+            if (compressed != null) {
+                String fileName = fileName(tileX, tileY, layerIndex, "dds");
+                info = new SplatmapInfo(fileName, texName, suffix, null, compressed, content, width, height, layerIndex);
+            }
+        }
+        
+        if (info == null) {
+            // Extract the texture using shared utilities
+            BufferedImage image = extractTextureByFormat(tex, mips, obj, format, level, width, height);
+            
+            if (image == null) {
+                System.out.println("\n    Warning: Could not extract " + texName);
+                return null;
+            }
+            
+            String fileName = fileName(tileX, tileY, layerIndex, "png");
+            info = new SplatmapInfo(fileName, texName, suffix, image, null, content, width, height, layerIndex);
+        }
+        
+        if (content != null) {
+            deduplicator.decoded(content);
+        }
+        return info;
     }
     
     /**
      * Extract texture image based on format using shared TextureUtils.
      */
-    private BufferedImage extractTextureByFormat(byte[] exportData, TextureBase.Format format, 
-                                                  int width, int height) {
+    private BufferedImage extractTextureByFormat(Texture tex, Texture.MipMap[] mips, ExportedObject obj, TextureBase.Format format, 
+                                                  int level, int width, int height) throws IOException {
         return switch (format) {
-            case DXT1 -> TextureUtils.extractDXT1(exportData, width, height);
-            case DXT3 -> TextureUtils.extractDXT3(exportData, width, height);
-            case RGBA8 -> TextureUtils.extractRGBA8(exportData, width, height);
-            case PALETTE_8_BIT -> TextureUtils.extractP8(exportData, width, height);
-            case G16 -> TextureUtils.extractG16(exportData, width, height);
+            case DXT1 -> TextureUtils.extractDXT1(tex, mips, obj, level, width, height);
+            case DXT3 -> TextureUtils.extractDXT3(tex, mips, obj, level, width, height);
+            case RGBA8 -> TextureUtils.extractRGBA8(tex, mips, obj, level, width, height);
+            case PALETTE_8_BIT -> TextureUtils.extractP8(tex, mips, obj, level, width, height);
+            case G16 -> TextureUtils.extractG16(tex, mips, obj, level, width, height);
             default -> {
                 System.out.println("    Unsupported format: " + format);
                 yield null;
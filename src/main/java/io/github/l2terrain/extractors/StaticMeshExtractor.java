@@ -1,8 +1,9 @@
 package io.github.l2terrain.extractors;
 
-import io.github.l2terrain.crypto.L2Decryptor;
+import io.github.l2terrain.utils.MapPass;
+import io.github.l2terrain.utils.ParallelExecutor;
+import io.github.l2terrain.utils.UnrealPackageUtils;
 import net.shrimpworks.unreal.packages.Package;
-import net.shrimpworks.unreal.packages.PackageReader;
 import net.shrimpworks.unreal.packages.entities.ExportedObject;
 import net.shrimpworks.unreal.packages.entities.Import;
 import net.shrimpworks.unreal.packages.entities.Named;
@@ -14,8 +15,11 @@ import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Extracts static mesh actor placements from Lineage 2 map files.
@@ -26,12 +30,29 @@ public class StaticMeshExtractor {
     
     private static final Pattern TILE_PATTERN = Pattern.compile("(\\d+)_(\\d+)\\.unr", Pattern.CASE_INSENSITIVE);
     
+    /** StaticMeshActor properties read by parseStaticMeshActor; all others are skipped */
+    private static final Set<String> ACTOR_PROPERTIES = Set.of(
+        "StaticMesh", "Location", "Rotation", "DrawScale", "DrawScale3D",
+        "bHidden", "bShadowCast", "bCollideActors", "bBlockActors", "bBlockPlayers");
+    
     private boolean verbose = false;
     
+    private int threads = 1;
+    
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger totalMeshes = new AtomicInteger();
+    
     public void setVerbose(boolean verbose) {
         this.verbose = verbose;
     }
     
+    /**
+     * Set the number of map files to process at a time.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+    
     /**
      * Extract static mesh data from all map files.
      * @param mapsDir Directory containing .unr map files
@@ -39,98 +60,99 @@ public class StaticMeshExtractor {
      * @return Number of tiles processed
      */
     public int extractAll(Path mapsDir, Path outputDir) throws IOException {
-        List<Path> mapFiles = new ArrayList<>();
-        
-        try (var stream = Files.list(mapsDir)) {
-            stream.filter(p -> {
-                String name = p.getFileName().toString().toLowerCase();
-                return name.endsWith(".unr") && TILE_PATTERN.matcher(name).matches();
-            }).forEach(mapFiles::add);
-        }
+        List<Path> mapFiles = MapPass.findMapFiles(mapsDir);
         
         System.out.println("Found " + mapFiles.size() + " map file(s)");
         
-        int processed = 0;
-        int totalMeshes = 0;
+        MapPass.run(mapFiles, List.of(visitor(outputDir)), threads);
         
-        for (Path mapFile : mapFiles) {
-            try {
-                String fileName = mapFile.getFileName().toString();
-                Matcher m = TILE_PATTERN.matcher(fileName);
-                if (!m.matches()) continue;
-                
-                String tileX = m.group(1);
-                String tileY = m.group(2);
-                String tileKey = tileX + "_" + tileY;
-                
-                // Create output directory for this tile
-                Path tileDir = outputDir.resolve(tileKey);
-                Files.createDirectories(tileDir);
-                
-                // Extract static meshes
-                List<StaticMeshInfo> meshes = extractFromMap(mapFile);
+        return printSummary();
+    }
+    
+    /**
+     * Get a map visitor which writes staticmeshes.json for each map it is given,
+     * for use in a {@link MapPass} shared with other consumers. The visitor is
+     * thread-safe.
+     * @param outputDir Output directory (JSON files go into XX_YY subdirectories)
+     */
+    public MapPass.Visitor visitor(Path outputDir) {
+        return (mapFile, pkg, mapThreads) -> {
+            String fileName = mapFile.getFileName().toString();
+            Matcher m = TILE_PATTERN.matcher(fileName);
+            if (!m.matches()) return;
+            
+            String tileX = m.group(1);
+            String tileY = m.group(2);
+            String tileKey = tileX + "_" + tileY;
+            
+            // Create output directory for this tile
+            Path tileDir = outputDir.resolve(tileKey);
+            Files.createDirectories(tileDir);
+            
+            // Extract static meshes
+            List<StaticMeshInfo> meshes = extractFromPackage(pkg, mapThreads);
+            
+            if (!meshes.isEmpty()) {
+                // Write JSON
+                Path jsonFile = tileDir.resolve("staticmeshes.json");
+                writeJson(meshes, jsonFile, tileKey);
                 
-                if (!meshes.isEmpty()) {
-                    // Write JSON
-                    Path jsonFile = tileDir.resolve("staticmeshes.json");
-                    writeJson(meshes, jsonFile, tileKey);
-                    
-                    if (verbose) {
-                        System.out.println("  " + tileKey + ": " + meshes.size() + " static meshes");
-                    }
-                    
-                    totalMeshes += meshes.size();
+                if (verbose) {
+                    System.out.println("  " + tileKey + ": " + meshes.size() + " static meshes");
                 }
                 
-                processed++;
-            } catch (Exception e) {
-                System.err.println("  Error processing " + mapFile.getFileName() + ": " + e.getMessage());
+                totalMeshes.addAndGet(meshes.size());
             }
-        }
-        
-        System.out.println("Extracted " + totalMeshes + " static meshes from " + processed + " tiles");
-        return processed;
+            
+            processed.incrementAndGet();
+        };
     }
     
     /**
-     * Extract static mesh data from a single map file.
+     * Print totals for all maps processed so far.
+     * @return Number of tiles processed
+     */
+    public int printSummary() {
+        System.out.println("Extracted " + totalMeshes.get() + " static meshes from " + processed.get() + " tiles");
+        return processed.get();
+    }
+    
+    /**
+     * Extract static mesh data from a single map file, decoding its actors
+     * on up to the configured number of threads.
      */
     public List<StaticMeshInfo> extractFromMap(Path mapFile) throws IOException {
-        List<StaticMeshInfo> meshes = new ArrayList<>();
-        
-        Path tempFile = Files.createTempFile("l2map_", ".tmp");
-        try {
-            L2Decryptor.decryptFile(mapFile, tempFile);
-            
-            try (Package pkg = new Package(new PackageReader(tempFile))) {
-                // Build import lookup for resolving mesh references
-                Map<Integer, Import> imports = new HashMap<>();
-                for (int i = 0; i < pkg.imports.length; i++) {
-                    imports.put(-(i + 1), pkg.imports[i]);
-                }
-                
-                for (ExportedObject exp : pkg.objects) {
-                    if (exp == null) continue;
-                    
-                    String className = exp.classIndex.get().name().name;
-                    if (!"StaticMeshActor".equals(className)) continue;
-                    
-                    try {
-                        Object obj = pkg.object(exp);
-                        StaticMeshInfo info = parseStaticMeshActor(obj, exp.name.name, imports);
-                        if (info != null) {
-                            meshes.add(info);
-                        }
-                    } catch (Exception e) {
-                        // Skip actors that can't be parsed
-                    }
-                }
-            }
-        } finally {
-            Files.deleteIfExists(tempFile);
+        try (Package pkg = UnrealPackageUtils.openPackage(mapFile, threads > 1)) {
+            return extractFromPackage(pkg, threads);
+        }
+    }
+    
+    /**
+     * Extract static mesh data from an opened map package. Actors of a
+     * concurrent package are decoded on up to {@code threads} threads; the
+     * result is in export order either way.
+     */
+    public List<StaticMeshInfo> extractFromPackage(Package pkg, int threads) {
+        // Build import lookup for resolving mesh references
+        Map<Integer, Import> imports = new HashMap<>();
+        for (int i = 0; i < pkg.imports.length; i++) {
+            imports.put(-(i + 1), pkg.imports[i]);
         }
         
-        return meshes;
+        List<ExportedObject> actors = pkg.objectsOfClass("StaticMeshActor");
+        StaticMeshInfo[] meshes = new StaticMeshInfo[actors.size()];
+        ParallelExecutor.forEach(pkg.isConcurrent() ? threads : 1, IntStream.range(0, actors.size()).boxed().toList(), i -> {
+            ExportedObject exp = actors.get(i);
+            try {
+                Object obj = pkg.object(exp, ACTOR_PROPERTIES);
+                meshes[i] = parseStaticMeshActor(obj, exp.name.name, imports);
+            } catch (Exception e) {
+                // Skip actors that can't be parsed
+            }
+        });
+        return Arrays.stream(meshes)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
     }
     
     /**
@@ -1,10 +1,13 @@
 package io.github.l2terrain.extractors;
 
-import io.github.l2terrain.crypto.L2Decryptor;
+import io.github.l2terrain.cache.TextureIndex;
+import io.github.l2terrain.model.CompressedTexture;
+import io.github.l2terrain.utils.ContentDeduplicator;
+import io.github.l2terrain.utils.FileFingerprint;
+import io.github.l2terrain.utils.ParallelExecutor;
 import io.github.l2terrain.utils.TextureUtils;
 import io.github.l2terrain.utils.UnrealPackageUtils;
 import net.shrimpworks.unreal.packages.Package;
-import net.shrimpworks.unreal.packages.PackageReader;
 import net.shrimpworks.unreal.packages.entities.Export;
 import net.shrimpworks.unreal.packages.entities.ExportedEntry;
 import net.shrimpworks.unreal.packages.entities.ExportedObject;
@@ -18,41 +21,126 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
 public class TerrainTextureExtractor {
     private static final Pattern TILE_PKG_PATTERN = Pattern.compile("[Tt]_(\\d+)_(\\d+)\\.utx");
     private static final Pattern REGIONAL_PKG_PATTERN = Pattern.compile("[Tt]_[A-Za-z]+\\d*\\.utx");
 
+    /** Formats extractTextureByFormat can decode; DXT textures are also the only ones kept compressed */
+    private static final Set<TextureBase.Format> DECODABLE_FORMATS = EnumSet.of(
+        TextureBase.Format.DXT1, TextureBase.Format.DXT3, TextureBase.Format.DXT5,
+        TextureBase.Format.RGBA8, TextureBase.Format.PALETTE_8_BIT);
+
+    /** A copy of a requested texture in one package */
+    private record Candidate(Path pkg, TextureIndex.Texture texture) { }
+
     public static class TextureInfo {
         public final String name;
         public final String sourcePackage;
         public final BufferedImage image;
+        public final CompressedTexture compressed; // original DXT data when kept compressed, image is then null
+        public final ContentDeduplicator.Content content; // with deduplication; image and compressed are both null for a copy
         public final int width;
         public final int height;
         public TextureInfo(String name, String sourcePackage, BufferedImage image, int width, int height) {
-            this.name = name; this.sourcePackage = sourcePackage; this.image = image; this.width = width; this.height = height;
+            this(name, sourcePackage, image, null, width, height);
+        }
+        public TextureInfo(String name, String sourcePackage, BufferedImage image, CompressedTexture compressed, int width, int height) {
+            this(name, sourcePackage, image, compressed, null, width, height);
+        }
+        public TextureInfo(String name, String sourcePackage, BufferedImage image, CompressedTexture compressed, ContentDeduplicator.Content content, int width, int height) {
+            this.name = name; this.sourcePackage = sourcePackage; this.image = image; this.compressed = compressed; this.content = content; this.width = width; this.height = height;
         }
     }
 
+    private boolean keepCompressed = false;
+    private int mipLevel = 0;
+    private int maxSize = 0;
+    private int threads = ParallelExecutor.defaultThreads();
+    private Path indexFile;
+    private ContentDeduplicator deduplicator;
+
+    /** Keep DXT textures as their original block data (for .dds output); other formats are still decoded. */
+    public void setKeepCompressed(boolean keepCompressed) { this.keepCompressed = keepCompressed; }
+
+    /** Decode a smaller mip level instead of the full-size image, for previews (0 = full size / no limit). */
+    public void setMipSelection(int mipLevel, int maxSize) { this.mipLevel = mipLevel; this.maxSize = maxSize; }
+
+    /** Set the number of packages to index or extract at a time. */
+    public void setThreads(int threads) { this.threads = threads; }
+
+    /** Keep the texture index in a file, so later runs only re-index packages that changed. */
+    public void setIndexFile(Path indexFile) { this.indexFile = indexFile; }
+
+    /** Hash textures before decoding them, and return textures whose content was already extracted as copies (null = decode every texture). */
+    public void setDeduplicator(ContentDeduplicator deduplicator) { this.deduplicator = deduplicator; }
+
+    /**
+     * Extract textures from the regional packages. Packages are looked up in the texture index
+     * (re-indexing only those that changed), then only the packages holding a requested texture
+     * are opened, in parallel, and only those exports decoded. If a copy cannot be decoded, the
+     * next package holding the same name is tried.
+     */
     public Map<String, TextureInfo> extractAll(Path inputFolder, Set<String> filterSet) throws IOException {
         Map<String, TextureInfo> results = new TreeMap<>();
-        List<Path> packages = new ArrayList<>();
+        List<Path> packages;
         try (var stream = Files.list(inputFolder)) {
-            stream.filter(p -> {
+            packages = stream.filter(p -> {
                 String name = p.getFileName().toString();
                 return REGIONAL_PKG_PATTERN.matcher(name).matches() && !TILE_PKG_PATTERN.matcher(name).matches();
-            }).forEach(packages::add);
+            }).sorted().toList();
         }
         if (packages.isEmpty()) { System.out.println("No regional texture packages found in " + inputFolder); return results; }
         System.out.println("Found " + packages.size() + " regional texture packages");
+        Map<Path, List<TextureIndex.Texture>> index = loadIndex(packages);
+
+        // Every decodable copy of each requested texture, in package then export order
+        Map<String, Deque<Candidate>> candidates = new LinkedHashMap<>();
         for (Path pkg : packages) {
-            System.out.println("Processing: " + pkg.getFileName());
-            extractFromPackage(pkg, results, filterSet);
+            for (TextureIndex.Texture texture : index.get(pkg)) {
+                String texNameLower = texture.name.toLowerCase();
+                if (filterSet != null && !filterSet.contains(texNameLower)) continue;
+                if (!DECODABLE_FORMATS.contains(texture.format)) continue;
+                candidates.computeIfAbsent(texNameLower, k -> new ArrayDeque<>()).add(new Candidate(pkg, texture));
+            }
+        }
+
+        while (!candidates.isEmpty()) {
+            Map<Path, List<TextureIndex.Texture>> byPackage = new TreeMap<>();
+            for (Deque<Candidate> copies : candidates.values()) {
+                Candidate next = copies.poll();
+                byPackage.computeIfAbsent(next.pkg(), k -> new ArrayList<>()).add(next.texture());
+            }
+            Map<String, TextureInfo> decoded = new ConcurrentHashMap<>();
+            AtomicReference<IOException> failure = new AtomicReference<>();
+            ParallelExecutor.forEach(threads, List.copyOf(byPackage.entrySet()), entry -> {
+                System.out.println("Processing: " + entry.getKey().getFileName());
+                try { extractFromPackage(entry.getKey(), entry.getValue(), decoded); }
+                catch (IOException e) { failure.compareAndSet(null, e); }
+            });
+            if (failure.get() != null) throw failure.get();
+            results.putAll(decoded);
+            candidates.keySet().removeAll(decoded.keySet());
+            candidates.values().removeIf(Deque::isEmpty);
         }
         return results;
     }
 
+    /** Collect the ground texture names referenced by metadata generated in this process. */
+    public Set<String> collectTextureNames(List<MetadataExtractor.TileMetadata> metadata) {
+        Set<String> textureNames = new HashSet<>();
+        for (MetadataExtractor.TileMetadata meta : metadata) {
+            for (MetadataExtractor.TileSplatmapInfo layer : meta.splatmapLayers) {
+                if (layer.groundTexture != null) { textureNames.add(layer.groundTexture.trim().toLowerCase()); }
+            }
+        }
+        return textureNames;
+    }
+
+    /** Collect the ground texture names referenced by the *_metadata.txt files of an earlier run. */
     public Set<String> collectTextureNamesFromMetadata(Path extractedFolder) throws IOException {
         Set<String> textureNames = new HashSet<>();
         try (var stream = Files.walk(extractedFolder)) {
@@ -70,49 +158,124 @@ public class TerrainTextureExtractor {
         return textureNames;
     }
 
-    private void extractFromPackage(Path packagePath, Map<String, TextureInfo> results, Set<String> filterSet) throws IOException {
+    private void extractFromPackage(Path packagePath, List<TextureIndex.Texture> textures, Map<String, TextureInfo> results) throws IOException {
         String pkgName = packagePath.getFileName().toString();
-        Path tempFile = Files.createTempFile("l2tex_", ".utx");
-        try {
-            L2Decryptor.decryptFile(packagePath, tempFile);
-            try (Package pkg = new Package(new PackageReader(tempFile))) {
-                for (Export export : pkg.exports) {
-                    String className = export.classIndex.get().name().name;
-                    if (!className.equals("Texture")) continue;
-                    String texName = export.name.name;
-                    String texNameLower = texName.toLowerCase();
-                    if (results.containsKey(texNameLower)) continue;
-                    if (filterSet != null && !filterSet.contains(texNameLower)) continue;
-                    try {
-                        ExportedObject obj = null;
-                        if (export instanceof ExportedObject eo) { obj = eo; }
-                        else if (export instanceof ExportedEntry ee) { obj = ee.asObject(); }
-                        if (obj == null) continue;
-                        var texObj = pkg.object(obj);
-                        if (!(texObj instanceof Texture tex)) continue;
-                        TextureBase.Format format = tex.format();
-                        int width = 256, height = 256;
-                        for (Property prop : tex.properties) {
-                            if (prop.name.name.equals("USize") && prop instanceof IntegerProperty ip) { width = ip.value; }
-                            else if (prop.name.name.equals("VSize") && prop instanceof IntegerProperty ip) { height = ip.value; }
-                        }
-                        byte[] exportData = UnrealPackageUtils.readExportData(tex, obj);
-                        BufferedImage image = extractTextureByFormat(exportData, format, width, height);
+        try (Package pkg = UnrealPackageUtils.openPackage(packagePath)) {
+            for (TextureIndex.Texture texture : textures) {
+                try {
+                    ExportedObject obj = asObject(pkg.exports[texture.exportIndex]);
+                    if (obj == null) continue;
+                    var texObj = pkg.object(obj, TextureUtils.TEXTURE_PROPERTIES);
+                    if (!(texObj instanceof Texture tex)) continue;
+                    TextureBase.Format format = texture.format;
+                    Texture.MipMap[] mips = TextureUtils.mipMaps(tex);
+                    int level = TextureUtils.selectMipLevel(mips, texture.width, texture.height, mipLevel, maxSize);
+                    int width = Math.max(1, texture.width >> level), height = Math.max(1, texture.height >> level);
+                    boolean compressedOutput = keepCompressed && CompressedTexture.isSupported(format);
+                    ContentDeduplicator.Content content = deduplicator != null ? deduplicator.content(mips, format, level, width, height, compressedOutput) : null;
+                    if (content != null && deduplicator.isCopy(content)) { results.put(texture.name.toLowerCase(), new TextureInfo(texture.name, pkgName, null, null, content, width, height)); continue; }
+                    TextureInfo info = null;
+                    if (compressedOutput) {
+                        CompressedTexture compressed = CompressedTexture.read(format, mips, level);
+                        if (compressed != null) { info = new TextureInfo(texture.name, pkgName, null, compressed, content, width, height); }
+                    }
+                    if (info == null) {
+                        BufferedImage image = extractTextureByFormat(tex, mips, obj, format, level, width, height);
                         if (image == null) continue;
-                        results.put(texNameLower, new TextureInfo(texName, pkgName, image, width, height));
-                    } catch (Exception e) { /* Skip textures we can't extract */ }
-                }
+                        info = new TextureInfo(texture.name, pkgName, image, null, content, width, height);
+                    }
+                    if (content != null) { deduplicator.decoded(content); }
+                    results.put(texture.name.toLowerCase(), info);
+                } catch (Exception e) { /* Skip textures we can't extract */ }
+            }
+        }
+    }
+
+    /** Index a package's textures from its export table and texture properties, without reading any mip data. */
+    private TextureIndex.Entry indexPackage(Path packagePath, String fingerprint) throws IOException {
+        List<TextureIndex.Texture> textures = new ArrayList<>();
+        try (Package pkg = UnrealPackageUtils.openPackage(packagePath)) {
+            for (Export export : pkg.exportsOfClass("Texture")) {
+                try {
+                    ExportedObject obj = asObject(export);
+                    if (obj == null) continue;
+                    var texObj = pkg.object(obj, TextureUtils.TEXTURE_PROPERTIES);
+                    if (!(texObj instanceof Texture tex)) continue;
+                    int width = 256, height = 256;
+                    for (Property prop : tex.properties) {
+                        if (prop.name.name.equals("USize") && prop instanceof IntegerProperty ip) { width = ip.value; }
+                        else if (prop.name.name.equals("VSize") && prop instanceof IntegerProperty ip) { height = ip.value; }
+                    }
+                    textures.add(new TextureIndex.Texture(export.name.name, export.index, tex.format(), width, height));
+                } catch (Exception e) { /* Skip textures we can't read */ }
             }
-        } finally { Files.deleteIfExists(tempFile); }
+        }
+        return new TextureIndex.Entry(fingerprint, textures);
+    }
+
+    /** Get the indexed textures of each package, re-indexing in parallel those not in the index file or changed since. */
+    private Map<Path, List<TextureIndex.Texture>> loadIndex(List<Path> packages) throws IOException {
+        Map<String, TextureIndex.Entry> previous = indexFile != null ? readIndex(indexFile) : Map.of();
+        Map<String, TextureIndex.Entry> entries = new ConcurrentHashMap<>();
+        Map<String, String> fingerprints = new HashMap<>();
+        List<Path> changed = new ArrayList<>();
+        for (Path pkg : packages) {
+            String name = pkg.getFileName().toString();
+            String fingerprint = fingerprint(pkg);
+            TextureIndex.Entry entry = previous.get(name);
+            if (fingerprint != null && entry != null && entry.fingerprint.equals(fingerprint)) { entries.put(name, entry); }
+            else { changed.add(pkg); fingerprints.put(name, fingerprint); }
+        }
+        if (!entries.isEmpty()) { System.out.println("Reusing " + entries.size() + " indexed packages from " + indexFile.getFileName()); }
+
+        if (!changed.isEmpty()) {
+            System.out.println("Indexing " + changed.size() + " regional texture packages");
+            AtomicReference<IOException> failure = new AtomicReference<>();
+            ParallelExecutor.forEach(threads, changed, pkg -> {
+                String name = pkg.getFileName().toString();
+                try { entries.put(name, indexPackage(pkg, fingerprints.get(name))); }
+                catch (IOException e) { failure.compareAndSet(null, e); }
+            });
+            if (failure.get() != null) throw failure.get();
+            if (indexFile != null) writeIndex(indexFile, entries);
+        }
+
+        Map<Path, List<TextureIndex.Texture>> index = new HashMap<>();
+        for (Path pkg : packages) { index.put(pkg, entries.get(pkg.getFileName().toString()).textures); }
+        return index;
+    }
+
+    private static Map<String, TextureIndex.Entry> readIndex(Path indexFile) {
+        try { return TextureIndex.read(indexFile); }
+        catch (IOException e) { System.err.println("  Ignoring texture index: " + e.getMessage()); return Map.of(); }
+    }
+
+    private static void writeIndex(Path indexFile, Map<String, TextureIndex.Entry> entries) {
+        // only packages with a fingerprint can be checked next time
+        Map<String, TextureIndex.Entry> valid = new TreeMap<>();
+        entries.forEach((name, entry) -> { if (entry.fingerprint != null) valid.put(name, entry); });
+        try { TextureIndex.write(indexFile, valid); }
+        catch (IOException e) { System.err.println("  Could not write texture index: " + e.getMessage()); }
+    }
+
+    private static String fingerprint(Path file) {
+        try { return FileFingerprint.of(file); }
+        catch (IOException e) { return null; }
+    }
+
+    private static ExportedObject asObject(Export export) {
+        if (export instanceof ExportedObject eo) return eo;
+        if (export instanceof ExportedEntry ee) return ee.asObject();
+        return null;
     }
 
-    private BufferedImage extractTextureByFormat(byte[] exportData, TextureBase.Format format, int width, int height) {
+    private BufferedImage extractTextureByFormat(Texture tex, Texture.MipMap[] mips, ExportedObject obj, TextureBase.Format format, int level, int width, int height) throws IOException {
         return switch (format) {
-            case DXT1 -> TextureUtils.extractDXT1(exportData, width, height);
-            case DXT3 -> TextureUtils.extractDXT3(exportData, width, height);
-            case DXT5 -> TextureUtils.extractDXT5(exportData, width, height);
-            case RGBA8 -> TextureUtils.extractRGBA8(exportData, width, height);
-            case PALETTE_8_BIT -> TextureUtils.extractP8(exportData, width, height);
+            case DXT1 -> TextureUtils.extractDXT1(tex, mips, obj, level, width, height);
+            case DXT3 -> TextureUtils.extractDXT3(tex, mips, obj, level, width, height);
+            case DXT5 -> TextureUtils.extractDXT5(tex, mips, obj, level, width, height);
+            case RGBA8 -> TextureUtils.extractRGBA8(tex, mips, obj, level, width, height);
+            case PALETTE_8_BIT -> TextureUtils.extractP8(tex, mips, obj, level, width, height);
             default -> null;
         };
     }
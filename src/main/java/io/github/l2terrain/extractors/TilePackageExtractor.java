@@ -0,0 +1,210 @@
+package io.github.l2terrain.extractors;
+
+import io.github.l2terrain.extractors.SplatmapExtractor.SplatmapSink;
+import io.github.l2terrain.model.TerrainTile;
+import io.github.l2terrain.model.TileCoordinates;
+import io.github.l2terrain.utils.ContentDeduplicator;
+import io.github.l2terrain.utils.TextureUtils;
+import io.github.l2terrain.utils.UnrealPackageUtils;
+import net.shrimpworks.unreal.packages.Package;
+import net.shrimpworks.unreal.packages.entities.Export;
+import net.shrimpworks.unreal.packages.entities.ExportedEntry;
+import net.shrimpworks.unreal.packages.entities.ExportedObject;
+import net.shrimpworks.unreal.packages.entities.objects.Texture;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the heightmap and splatmaps of a T_XX_YY.utx tile package in a single pass.
+ * 
+ * <p>The package is opened and decrypted once, and its export table is walked
+ * once. Each texture object is loaded at most once and handed to the
+ * {@link HeightmapExtractor} and/or {@link SplatmapExtractor} logic as needed,
+ * so results are the same as running both extractors separately.</p>
+ * 
+ * <p>The package is opened concurrent, and its splatmaps are decoded in
+ * parallel once the export table has been walked. They are handed to a
+ * {@link SplatmapSink} in export order as soon as they are decoded, so only
+ * the decoded splatmaps of one package are held in memory.</p>
+ */
+public class TilePackageExtractor {
+    
+    /** Pattern to match tile package names: T_XX_YY.utx or t_XX_YY.utx */
+    private static final Pattern TILE_PKG_PATTERN = Pattern.compile("[Tt]_(\\d+)_(\\d+)\\.utx", Pattern.CASE_INSENSITIVE);
+    
+    private final HeightmapExtractor heightmapExtractor = new HeightmapExtractor();
+    private final SplatmapExtractor splatmapExtractor = new SplatmapExtractor();
+    
+    private int threads = 1;
+    
+    /**
+     * Result of extracting a single tile package.
+     */
+    public static class TileResult {
+        /** Tile name (e.g., "23_16"), used as the output directory */
+        public final String tileName;
+        /** The heightmap, or null if not requested or not found */
+        public final TerrainTile heightmap;
+        /** Why the heightmap could not be extracted, or null */
+        public final IOException heightmapError;
+        /** Number of splatmaps passed to the sink */
+        public final int splatmapCount;
+        
+        TileResult(String tileName, TerrainTile heightmap, IOException heightmapError, int splatmapCount) {
+            this.tileName = tileName;
+            this.heightmap = heightmap;
+            this.heightmapError = heightmapError;
+            this.splatmapCount = splatmapCount;
+        }
+    }
+    
+    /**
+     * Keep DXT splatmaps compressed instead of decoding them.
+     * 
+     * @see SplatmapExtractor#setKeepCompressed(boolean)
+     */
+    public void setKeepCompressed(boolean keepCompressed) {
+        splatmapExtractor.setKeepCompressed(keepCompressed);
+    }
+    
+    /**
+     * Decode a smaller splatmap mip level, for previews.
+     * 
+     * @see SplatmapExtractor#setMipSelection(int, int)
+     */
+    public void setMipSelection(int mipLevel, int maxSize) {
+        splatmapExtractor.setMipSelection(mipLevel, maxSize);
+    }
+    
+    /**
+     * Pass splatmaps with already extracted content as copies instead of decoding them.
+     * 
+     * @see SplatmapExtractor#setDeduplicator(ContentDeduplicator)
+     */
+    public void setDeduplicator(ContentDeduplicator deduplicator) {
+        splatmapExtractor.setDeduplicator(deduplicator);
+    }
+    
+    /**
+     * Set the number of threads used to decode the splatmaps of one package.
+     * Packages are only opened for concurrent reads when this is more than 1.
+     * 
+     * @see SplatmapExtractor#setThreads(int)
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+        splatmapExtractor.setThreads(threads);
+    }
+    
+    /**
+     * Check whether a filename is a T_XX_YY.utx tile package, which can hold splatmaps.
+     */
+    public static boolean isTilePackage(String filename) {
+        return TILE_PKG_PATTERN.matcher(filename).matches();
+    }
+    
+    /**
+     * Extract the heightmap and/or splatmaps from a tile package.
+     * 
+     * @param file the T_XX_YY.utx file to extract from
+     * @param heightmap true to extract the G16 heightmap
+     * @param splatmapSink receives each XX_YY_suffix splatmap as it is decoded,
+     *                     or null to skip splatmaps
+     * @return the extracted heightmap and number of splatmaps
+     * @throws IOException if the package cannot be opened or parsed
+     */
+    public TileResult extract(Path file, boolean heightmap, SplatmapSink splatmapSink) throws IOException {
+        boolean splatmaps = splatmapSink != null;
+        String filename = file.getFileName().toString();
+        
+        TileCoordinates coords = TileCoordinates.fromFilename(filename);
+        if (coords == null && heightmap && !splatmaps) {
+            throw new IOException("Cannot parse coordinates from filename: " + filename);
+        }
+        
+        Matcher pkgMatcher = TILE_PKG_PATTERN.matcher(filename);
+        boolean wantSplatmaps = splatmaps && pkgMatcher.matches();
+        int tileX = wantSplatmaps ? Integer.parseInt(pkgMatcher.group(1)) : 0;
+        int tileY = wantSplatmaps ? Integer.parseInt(pkgMatcher.group(2)) : 0;
+        
+        boolean wantHeightmap = heightmap && coords != null;
+        TerrainTile tile = null;
+        IOException heightmapError = heightmap && coords == null
+            ? new IOException("Cannot parse coordinates from filename: " + filename)
+            : null;
+        String tileName = wantSplatmaps ? String.format("%d_%d", tileX, tileY)
+            : coords != null ? String.format("%d_%d", coords.x(), coords.y()) : null;
+        int splatmapCount = 0;
+        
+        try (Package pkg = UnrealPackageUtils.openPackage(file, wantSplatmaps && threads > 1)) {
+            List<SplatmapExtractor.Candidate> candidates = new ArrayList<>();
+            
+            for (Export export : pkg.exportsOfClass("Texture")) {
+                if (!wantHeightmap && !wantSplatmaps) break;
+                
+                String texName = export.name.name;
+                String suffix = wantSplatmaps ? splatmapExtractor.splatmapSuffix(texName, tileX, tileY) : null;
+                
+                // the heightmap is the first G16 texture, so every texture is a candidate until it is found
+                boolean heightmapCandidate = wantHeightmap && tile == null;
+                if (!heightmapCandidate && suffix == null) continue;
+                
+                ExportedObject obj = null;
+                if (export instanceof ExportedObject eo) {
+                    obj = eo;
+                } else if (export instanceof ExportedEntry ee) {
+                    obj = ee.asObject();
+                }
+                if (obj == null) continue;
+                
+                Texture tex;
+                try {
+                    if (!(pkg.object(obj, TextureUtils.TEXTURE_PROPERTIES) instanceof Texture t)) continue;
+                    tex = t;
+                } catch (Exception e) {
+                    if (suffix != null) {
+                        System.out.println("\n    Error extracting " + texName + ": " + e.getMessage());
+                    }
+                    if (heightmapCandidate) {
+                        // a separate heightmap pass would have failed the whole package here
+                        heightmapError = new IOException("Failed to parse package: " + filename, e);
+                        wantHeightmap = false;
+                    }
+                    continue;
+                }
+                
+                if (heightmapCandidate && heightmapExtractor.isHeightmap(tex)) {
+                    try {
+                        tile = heightmapExtractor.extractTile(tex, obj, coords, filename);
+                    } catch (IOException e) {
+                        heightmapError = e;
+                    }
+                    wantHeightmap = false;
+                }
+                
+                if (suffix != null) {
+                    candidates.add(new SplatmapExtractor.Candidate(tex, obj, texName, suffix));
+                }
+            }
+            
+            if (!candidates.isEmpty()) {
+                splatmapCount = splatmapExtractor.extractSplatmaps(pkg, candidates, tileName, tileX, tileY, splatmapSink);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to parse package: " + filename, e);
+        }
+        
+        if (heightmap && tile == null && heightmapError == null) {
+            heightmapError = new IOException("No G16 texture found in file: " + filename);
+        }
+        
+        return new TileResult(tileName, tile, heightmapError, splatmapCount);
+    }
+}
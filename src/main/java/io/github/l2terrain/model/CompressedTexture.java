@@ -0,0 +1,67 @@
+package io.github.l2terrain.model;
+
+import io.github.l2terrain.utils.TextureUtils;
+import io.github.l2terrain.utils.UnrealPackageUtils;
+import net.shrimpworks.unreal.packages.entities.objects.Texture;
+import net.shrimpworks.unreal.packages.entities.objects.TextureBase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DXT block data of a texture, kept as stored in the package so it can be
+ * written out without decoding.
+ * 
+ * @param format DXT1, DXT3 or DXT5
+ * @param width width of the first mip level
+ * @param height height of the first mip level
+ * @param mips compressed data of each mip level, largest first
+ */
+public record CompressedTexture(TextureBase.Format format, int width, int height, List<byte[]> mips) {
+    
+    /**
+     * Check whether a texture format can be kept compressed.
+     */
+    public static boolean isSupported(TextureBase.Format format) {
+        return format == TextureBase.Format.DXT1
+            || format == TextureBase.Format.DXT3
+            || format == TextureBase.Format.DXT5;
+    }
+    
+    /**
+     * Read all mip levels of a DXT texture.
+     * 
+     * @param tex the texture
+     * @return the compressed texture, or null if its format is not DXT or it has no mip data
+     */
+    public static CompressedTexture read(Texture tex) {
+        return read(tex.format(), TextureUtils.mipMaps(tex), 0);
+    }
+    
+    /**
+     * Read the mip levels of a DXT texture, starting at a smaller level for
+     * previews.
+     * 
+     * @param format the texture's format
+     * @param mipMaps the texture's parsed mip headers
+     * @param firstLevel the level that becomes the top of the returned chain
+     * @return the compressed texture, or null if its format is not DXT or it has no such level
+     */
+    public static CompressedTexture read(TextureBase.Format format, Texture.MipMap[] mipMaps, int firstLevel) {
+        if (!isSupported(format)) return null;
+        
+        int blockBytes = format == TextureBase.Format.DXT1 ? 8 : 16;
+        List<byte[]> mips = new ArrayList<>(mipMaps.length);
+        for (int i = firstLevel; i < mipMaps.length; i++) {
+            Texture.MipMap mip = mipMaps[i];
+            // stop at the first level that is missing or holds fewer blocks than its size needs
+            if (mip.width <= 0 || mip.height <= 0) break;
+            long expected = (long) Math.max(1, (mip.width + 3) / 4) * Math.max(1, (mip.height + 3) / 4) * blockBytes;
+            if (mip.size < expected) break;
+            mips.add(UnrealPackageUtils.toArray(mip.dataBuffer()));
+        }
+        if (mips.isEmpty()) return null;
+        
+        return new CompressedTexture(format, mipMaps[firstLevel].width, mipMaps[firstLevel].height, List.copyOf(mips));
+    }
+}
@@ -0,0 +1,115 @@
+package io.github.l2terrain.model;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-process record of the files written to each tile directory.
+ * 
+ * <p>The heightmap, splatmap and detail map stages add to the manifest as
+ * they write files, so the metadata stage can build each tile's metadata
+ * without listing the output folder and parsing file names back into layer
+ * indices. All methods may be called from multiple extraction threads.</p>
+ * 
+ * <p>A stage that did not run in this process leaves its files unrecorded;
+ * {@link #recordsSplatmaps()} and {@link #recordsDetailMaps()} tell whether
+ * the manifest is authoritative for each kind of file.</p>
+ */
+public class ExtractionManifest {
+    
+    /**
+     * The layer files written to one tile directory, keyed by layer index.
+     */
+    public static class TileFiles {
+        public final SortedMap<Integer, String> splatmaps = new ConcurrentSkipListMap<>();
+        public final SortedMap<Integer, String> detailMaps = new ConcurrentSkipListMap<>();
+    }
+    
+    private final Map<String, TileFiles> tiles = new ConcurrentSkipListMap<>();
+    
+    private volatile boolean splatmapsRecorded;
+    private volatile boolean detailMapsRecorded;
+    
+    /**
+     * Note that the splatmap stage runs in this process, so every splatmap
+     * written is recorded.
+     */
+    public void beginSplatmaps() {
+        splatmapsRecorded = true;
+    }
+    
+    /**
+     * Note that the detail map stage runs in this process, so every detail
+     * map written is recorded.
+     */
+    public void beginDetailMaps() {
+        detailMapsRecorded = true;
+    }
+    
+    public boolean recordsSplatmaps() {
+        return splatmapsRecorded;
+    }
+    
+    public boolean recordsDetailMaps() {
+        return detailMapsRecorded;
+    }
+    
+    /**
+     * @return true if both splatmaps and detail maps are recorded, so the
+     *         manifest lists every tile directory with layer files
+     */
+    public boolean isComplete() {
+        return splatmapsRecorded && detailMapsRecorded;
+    }
+    
+    /**
+     * Record a tile directory, even if no layer files end up in it.
+     * 
+     * @param tileName tile directory name (e.g., "23_16")
+     */
+    public void addTile(String tileName) {
+        tile(tileName);
+    }
+    
+    /**
+     * Record a written splatmap.
+     * 
+     * @param tileName tile directory name
+     * @param index splatmap layer index
+     * @param fileName file name within the tile directory
+     */
+    public void addSplatmap(String tileName, int index, String fileName) {
+        tile(tileName).splatmaps.put(index, fileName);
+    }
+    
+    /**
+     * Record a written detail map.
+     * 
+     * @param tileName tile directory name
+     * @param layerNum deco layer number
+     * @param fileName file name within the tile directory
+     */
+    public void addDetailMap(String tileName, int layerNum, String fileName) {
+        tile(tileName).detailMaps.put(layerNum, fileName);
+    }
+    
+    /**
+     * @return recorded tile directory names, in name order
+     */
+    public Set<String> tileNames() {
+        return tiles.keySet();
+    }
+    
+    /**
+     * @return the files recorded for a tile, or null if the tile is unknown
+     */
+    public TileFiles files(String tileName) {
+        return tiles.get(tileName);
+    }
+    
+    private TileFiles tile(String tileName) {
+        return tiles.computeIfAbsent(tileName, k -> new TileFiles());
+    }
+}
@@ -0,0 +1,142 @@
+package io.github.l2terrain.tools;
+
+import net.shrimpworks.unreal.packages.entities.Name;
+import net.shrimpworks.unreal.packages.entities.properties.ArrayProperty;
+import net.shrimpworks.unreal.packages.entities.properties.FloatProperty;
+import net.shrimpworks.unreal.packages.entities.properties.IntegerProperty;
+import net.shrimpworks.unreal.packages.entities.properties.Property;
+import net.shrimpworks.unreal.packages.entities.properties.PropertyList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Regression benchmark for array property assembly.
+ * 
+ * <p>Builds the property stream of a synthetic TerrainInfo-like export, with
+ * two large arrays (Layers and DecoLayers) between plain properties, and
+ * times assembling it with {@link PropertyList} against the previous
+ * remove-and-copy assembly. The previous assembly is quadratic in the array
+ * length, so its time should grow ~4x per doubling while PropertyList's
+ * grows ~2x.</p>
+ * 
+ * <p>The stream is fed to the assembly directly rather than through a
+ * package, because Package stops reading an object after 256 properties.</p>
+ */
+public class ArrayPropertyBenchmark {
+    
+    private static final int[] DEFAULT_SIZES = {1000, 2000, 4000, 8000, 16000};
+    
+    public static void main(String[] args) {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        
+        System.out.printf("%8s %14s %14s %8s%n", "items", "previous ms", "in-place ms", "speedup");
+        for (int size : sizes) {
+            List<Property> stream = syntheticExport(size);
+            
+            List<Property> expected = assemble(stream);
+            verify(expected, size);
+            
+            // warm up both paths before timing
+            for (int i = 0; i < 3; i++) {
+                assemblePrevious(stream);
+                assemble(stream);
+            }
+            
+            int reps = Math.max(1, 200_000 / size / 10);
+            double previous = time(() -> assemblePrevious(stream), reps);
+            double inPlace = time(() -> assemble(stream), Math.max(reps, 20));
+            
+            System.out.printf("%8d %14.3f %14.3f %7.1fx%n", size, previous, inPlace, previous / inPlace);
+        }
+    }
+    
+    /**
+     * Property stream of a synthetic export: plain properties around two
+     * arrays of the given length, each written as a first element followed
+     * by array items, as a UE2 package stores them.
+     */
+    private static List<Property> syntheticExport(int arrayLength) {
+        List<Property> stream = new ArrayList<>();
+        stream.add(new IntegerProperty(null, new Name("TerrainSectorSize"), 16));
+        addArray(stream, new Name("Layers"), arrayLength);
+        stream.add(new FloatProperty(null, new Name("TerrainScale"), 1.0f));
+        addArray(stream, new Name("DecoLayers"), arrayLength);
+        stream.add(new IntegerProperty(null, new Name("Tag"), 0));
+        return stream;
+    }
+    
+    private static void addArray(List<Property> stream, Name name, int length) {
+        stream.add(new IntegerProperty(null, name, 0));
+        for (int i = 1; i < length; i++) {
+            stream.add(new ArrayProperty.ArrayItem(new IntegerProperty(null, name, i), i));
+        }
+    }
+    
+    private static List<Property> assemble(List<Property> stream) {
+        PropertyList properties = new PropertyList(null);
+        for (Property p : stream) {
+            properties.add(p);
+        }
+        return properties.properties();
+    }
+    
+    /**
+     * The assembly Package.readProperties used before PropertyList, kept as
+     * the baseline: each item removes the array by linear search and copies
+     * it to append one element.
+     */
+    private static List<Property> assemblePrevious(List<Property> stream) {
+        List<Property> properties = new ArrayList<>();
+        for (Property p : stream) {
+            if (p instanceof ArrayProperty.ArrayItem && !properties.isEmpty()) {
+                Property lastProperty = properties.get(properties.size() - 1);
+                if (lastProperty instanceof ArrayProperty) {
+                    properties.remove(lastProperty);
+                    properties.add(((ArrayProperty) lastProperty).add((ArrayProperty.ArrayItem) p));
+                } else if (lastProperty.name.equals(p.name)) {
+                    properties.remove(lastProperty);
+                    properties.add(new ArrayProperty(((ArrayProperty.ArrayItem) p).property));
+                } else properties.add(((ArrayProperty.ArrayItem) p).property);
+            } else properties.add(p);
+        }
+        return properties;
+    }
+    
+    private static void verify(List<Property> properties, int arrayLength) {
+        if (properties.size() != 5) {
+            throw new IllegalStateException("Expected 5 properties, got " + properties.size());
+        }
+        for (int index : new int[] {1, 3}) {
+            if (!(properties.get(index) instanceof ArrayProperty array)) {
+                throw new IllegalStateException("Expected an array at " + index + ": " + properties.get(index));
+            }
+            if (array.values.size() != arrayLength) {
+                throw new IllegalStateException(String.format("%s has %d values, expected %d",
+                    array.name.name, array.values.size(), arrayLength));
+            }
+            for (int i = 0; i < arrayLength; i++) {
+                if (((IntegerProperty) array.values.get(i)).value != i) {
+                    throw new IllegalStateException(array.name.name + " is out of order at " + i);
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return average milliseconds per run
+     */
+    private static double time(Runnable run, int reps) {
+        long start = System.nanoTime();
+        for (int i = 0; i < reps; i++) {
+            run.run();
+        }
+        return (System.nanoTime() - start) / 1e6 / reps;
+    }
+}
@@ -1,12 +1,10 @@
 package io.github.l2terrain.tools;
 
-import io.github.l2terrain.crypto.L2Decryptor;
+import io.github.l2terrain.utils.UnrealPackageUtils;
 import net.shrimpworks.unreal.packages.Package;
-import net.shrimpworks.unreal.packages.PackageReader;
 import net.shrimpworks.unreal.packages.entities.Import;
 import net.shrimpworks.unreal.packages.entities.Named;
 
-import java.nio.file.Files;
 import java.nio.file.Path;
 
 /**
@@ -23,28 +21,21 @@ public class ImportLister {
         Path inputPath = Path.of(args[0]);
         String filter = args.length > 1 ? args[1].toLowerCase() : null;
         
-        Path tempFile = Files.createTempFile("l2pkg_", ".tmp");
-        try {
-            L2Decryptor.decryptFile(inputPath, tempFile);
-            
-            try (Package pkg = new Package(new PackageReader(tempFile))) {
-                System.out.println("Imports (" + pkg.imports.length + " total):");
-                for (int i = 0; i < pkg.imports.length; i++) {
-                    Import imp = pkg.imports[i];
-                    
-                    // Build the full package path by following parent references
-                    String fullPath = buildPackagePath(imp);
-                    
-                    String line = String.format("  [-%d] %s (%s) -> %s", 
-                        i + 1, imp.name.name, imp.className.name, fullPath);
-                    
-                    if (filter == null || line.toLowerCase().contains(filter)) {
-                        System.out.println(line);
-                    }
+        try (Package pkg = UnrealPackageUtils.openPackage(inputPath)) {
+            System.out.println("Imports (" + pkg.imports.length + " total):");
+            for (int i = 0; i < pkg.imports.length; i++) {
+                Import imp = pkg.imports[i];
+                
+                // Build the full package path by following parent references
+                String fullPath = buildPackagePath(imp);
+                
+                String line = String.format("  [-%d] %s (%s) -> %s", 
+                    i + 1, imp.name.name, imp.className.name, fullPath);
+                
+                if (filter == null || line.toLowerCase().contains(filter)) {
+                    System.out.println(line);
                 }
             }
-        } finally {
-            Files.deleteIfExists(tempFile);
         }
     }
     
@@ -1,8 +1,7 @@
 package io.github.l2terrain.tools;
 
-import io.github.l2terrain.crypto.L2Decryptor;
+import io.github.l2terrain.utils.UnrealPackageUtils;
 import net.shrimpworks.unreal.packages.Package;
-import net.shrimpworks.unreal.packages.PackageReader;
 import net.shrimpworks.unreal.packages.entities.Export;
 import net.shrimpworks.unreal.packages.entities.ExportedEntry;
 import net.shrimpworks.unreal.packages.entities.ExportedObject;
@@ -15,7 +14,6 @@ import net.shrimpworks.unreal.packages.entities.properties.StructProperty;
 import net.shrimpworks.unreal.packages.entities.objects.Texture;
 
 import java.lang.reflect.Field;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
@@ -35,18 +33,11 @@ public class MapAnalyzer {
         Path mapFile = Path.of(args[0]);
         System.out.println("Analyzing: " + mapFile);
         
-        // Decrypt to temp file
-        Path tempFile = Files.createTempFile("l2map_", ".unr");
-        try {
-            L2Decryptor.decryptFile(mapFile, tempFile);
-            analyzePackage(tempFile);
-        } finally {
-            Files.deleteIfExists(tempFile);
-        }
+        analyzePackage(mapFile);
     }
     
-    private static void analyzePackage(Path packagePath) throws Exception {
-        try (Package pkg = new Package(new PackageReader(packagePath))) {
+    private static void analyzePackage(Path mapFile) throws Exception {
+        try (Package pkg = UnrealPackageUtils.openPackage(mapFile)) {
             System.out.println("\n=== PACKAGE INFO ===");
             System.out.println("Version: " + pkg.version);
             System.out.println("Names: " + pkg.names.length);
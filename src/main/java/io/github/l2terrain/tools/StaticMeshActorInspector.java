@@ -1,15 +1,13 @@
 package io.github.l2terrain.tools;
 
-import io.github.l2terrain.crypto.L2Decryptor;
+import io.github.l2terrain.utils.UnrealPackageUtils;
 import net.shrimpworks.unreal.packages.Package;
-import net.shrimpworks.unreal.packages.PackageReader;
 import net.shrimpworks.unreal.packages.entities.ExportedObject;
 import net.shrimpworks.unreal.packages.entities.objects.Object;
 import net.shrimpworks.unreal.packages.entities.properties.ObjectProperty;
 import net.shrimpworks.unreal.packages.entities.properties.Property;
 import net.shrimpworks.unreal.packages.entities.properties.StructProperty;
 
-import java.nio.file.Files;
 import java.nio.file.Path;
 
 /**
@@ -27,44 +25,32 @@ public class StaticMeshActorInspector {
         Path inputPath = Path.of(args[0]);
         int maxActors = args.length > 1 ? Integer.parseInt(args[1]) : 5;
         
-        Path tempFile = Files.createTempFile("l2pkg_", ".tmp");
-        try {
-            L2Decryptor.decryptFile(inputPath, tempFile);
+        try (Package pkg = UnrealPackageUtils.openPackage(inputPath)) {
+            int count = 0;
             
-            try (Package pkg = new Package(new PackageReader(tempFile))) {
-                int count = 0;
+            for (ExportedObject exp : pkg.objectsOfClass("StaticMeshActor")) {
+                System.out.println("\n=== " + exp.name.name + " ===");
                 
-                for (ExportedObject exp : pkg.objects) {
-                    if (exp == null) continue;
+                try {
+                    Object obj = pkg.object(exp);
                     
-                    String className = exp.classIndex.get().name().name;
-                    if ("StaticMeshActor".equals(className)) {
-                        System.out.println("\n=== " + exp.name.name + " ===");
-                        
-                        try {
-                            Object obj = pkg.object(exp);
-                            
-                            // Print all properties
-                            for (Property prop : obj.properties) {
-                                System.out.println("  " + formatProperty(prop));
-                            }
-                        } catch (Exception e) {
-                            System.out.println("  Error reading properties: " + e.getMessage());
-                        }
-                        
-                        count++;
-                        if (count >= maxActors) break;
+                    // Print all properties
+                    for (Property prop : obj.properties) {
+                        System.out.println("  " + formatProperty(prop));
                     }
+                } catch (Exception e) {
+                    System.out.println("  Error reading properties: " + e.getMessage());
                 }
                 
-                if (count == 0) {
-                    System.out.println("No StaticMeshActor exports found in this map.");
-                } else {
-                    System.out.println("\n(Showed " + count + " actors)");
-                }
+                count++;
+                if (count >= maxActors) break;
+            }
+            
+            if (count == 0) {
+                System.out.println("No StaticMeshActor exports found in this map.");
+            } else {
+                System.out.println("\n(Showed " + count + " actors)");
             }
-        } finally {
-            Files.deleteIfExists(tempFile);
         }
     }
     
@@ -1,8 +1,7 @@
 package io.github.l2terrain.tools;
 
-import io.github.l2terrain.crypto.L2Decryptor;
+import io.github.l2terrain.utils.UnrealPackageUtils;
 import net.shrimpworks.unreal.packages.Package;
-import net.shrimpworks.unreal.packages.PackageReader;
 import net.shrimpworks.unreal.packages.entities.Export;
 import net.shrimpworks.unreal.packages.entities.ExportedEntry;
 import net.shrimpworks.unreal.packages.entities.ExportedObject;
@@ -13,7 +12,6 @@ import net.shrimpworks.unreal.packages.entities.properties.Property;
 import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 
@@ -31,17 +29,11 @@ public class TerrainInfoDumper {
         Path mapFile = Path.of(args[0]);
         System.out.println("Analyzing: " + mapFile);
         
-        Path tempFile = Files.createTempFile("l2map_", ".unr");
-        try {
-            L2Decryptor.decryptFile(mapFile, tempFile);
-            analyzeTerrainInfo(tempFile);
-        } finally {
-            Files.deleteIfExists(tempFile);
-        }
+        analyzeTerrainInfo(mapFile);
     }
     
-    private static void analyzeTerrainInfo(Path packagePath) throws Exception {
-        try (Package pkg = new Package(new PackageReader(packagePath))) {
+    private static void analyzeTerrainInfo(Path mapFile) throws Exception {
+        try (Package pkg = UnrealPackageUtils.openPackage(mapFile)) {
             // Build import index lookup
             Map<Integer, String> importNames = new HashMap<>();
             for (int i = 0; i < pkg.imports.length; i++) {
@@ -52,10 +44,7 @@ public class TerrainInfoDumper {
             }
             
             // Find TerrainInfo
-            for (Export export : pkg.exports) {
-                String className = export.classIndex.get().name().name;
-                if (!className.equals("TerrainInfo")) continue;
-                
+            for (Export export : pkg.exportsOfClass("TerrainInfo")) {
                 System.out.printf("\n=== TerrainInfo: %s ===%n", export.name.name);
                 
                 ExportedObject obj = null;
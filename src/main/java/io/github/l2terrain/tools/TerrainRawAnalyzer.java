@@ -1,13 +1,10 @@
 package io.github.l2terrain.tools;
 
-import io.github.l2terrain.crypto.L2Decryptor;
+import io.github.l2terrain.utils.UnrealPackageUtils;
 import net.shrimpworks.unreal.packages.Package;
-import net.shrimpworks.unreal.packages.PackageReader;
 import net.shrimpworks.unreal.packages.entities.Export;
 import net.shrimpworks.unreal.packages.entities.Import;
 
-import java.lang.reflect.Field;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 
@@ -26,17 +23,11 @@ public class TerrainRawAnalyzer {
         Path mapFile = Path.of(args[0]);
         System.out.println("Analyzing: " + mapFile);
         
-        Path tempFile = Files.createTempFile("l2map_", ".unr");
-        try {
-            L2Decryptor.decryptFile(mapFile, tempFile);
-            analyzeTerrainInfo(tempFile);
-        } finally {
-            Files.deleteIfExists(tempFile);
-        }
+        analyzeTerrainInfo(mapFile);
     }
     
-    private static void analyzeTerrainInfo(Path packagePath) throws Exception {
-        try (Package pkg = new Package(new PackageReader(packagePath))) {
+    private static void analyzeTerrainInfo(Path mapFile) throws Exception {
+        try (Package pkg = UnrealPackageUtils.openPackage(mapFile)) {
             // Build reference lookup tables
             Map<Integer, String> refNames = new HashMap<>();
             Map<Integer, String> refClasses = new HashMap<>();
@@ -50,18 +41,12 @@ public class TerrainRawAnalyzer {
             }
             
             // Find TerrainInfo and read raw export data
-            for (Export export : pkg.exports) {
-                String className = export.classIndex.get().name().name;
-                if (!className.equals("TerrainInfo")) continue;
-                
+            for (Export export : pkg.exportsOfClass("TerrainInfo")) {
                 System.out.printf("\n=== TerrainInfo: %s ===%n", export.name.name);
                 System.out.printf("Export pos: %d, size: %d%n", export.pos, export.size);
                 
                 // Read the raw export data
-                PackageReader reader = getPackageReader(pkg);
-                reader.moveTo(export.pos);
-                byte[] data = new byte[export.size];
-                reader.readBytes(data, 0, export.size);
+                byte[] data = UnrealPackageUtils.toArray(pkg.exportData(export));
                 
                 // Find all object references that point to known imports/exports
                 System.out.println("\n=== Scanning for object references ===");
@@ -196,12 +181,6 @@ public class TerrainRawAnalyzer {
         }
     }
     
-    private static PackageReader getPackageReader(Package pkg) throws Exception {
-        Field readerField = Package.class.getDeclaredField("reader");
-        readerField.setAccessible(true);
-        return (PackageReader) readerField.get(pkg);
-    }
-    
     private static int readCompactIndex(byte[] data, int offset) {
         if (offset >= data.length) return 0;
         
@@ -0,0 +1,170 @@
+package io.github.l2terrain.utils;
+
+import net.shrimpworks.unreal.packages.entities.objects.Texture;
+import net.shrimpworks.unreal.packages.entities.objects.TextureBase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Content-addressed deduplication of extracted textures.
+ * 
+ * <p>Extractors hash a texture's stored mip data before decoding it. Once a
+ * texture with a given hash has been decoded, later ones skip decoding and
+ * are recorded as copies. A texture only counts as decoded when decoding
+ * succeeded, so a texture that fails leaves the next one with the same
+ * content to be decoded instead; textures with the same content that are
+ * decoded at the same time are simply both decoded. Once a stage has written
+ * its files, {@link #linkCopies()} turns each copy into a hard link to the
+ * file written for that content (or a plain copy where the file system has
+ * no hard links), so every output file still exists under its usual name.</p>
+ * 
+ * <p>All methods except {@link #linkCopies()} may be called from multiple
+ * extraction threads.</p>
+ */
+public class ContentDeduplicator {
+    
+    /**
+     * The content of a texture as it will be written.
+     * 
+     * @param hash hash of the format, output size and stored mip data
+     * @param compressed whether the content is written as .dds rather than decoded to .png
+     */
+    public record Content(String hash, boolean compressed) { }
+    
+    private record Copy(String hash, Path file) { }
+    
+    private final Set<String> decoded = ConcurrentHashMap.newKeySet();
+    private final Map<String, Path> written = new ConcurrentHashMap<>();
+    private final Queue<Copy> copies = new ConcurrentLinkedQueue<>();
+    
+    /**
+     * Hash the content a texture will be written with, without decoding it.
+     * Every mip level from the selected one down is included, so the hash
+     * covers both decoded and .dds output.
+     * 
+     * @param mips the texture's parsed mip headers
+     * @param format the texture's format
+     * @param level the mip level being extracted
+     * @param width output width
+     * @param height output height
+     * @param compressed whether the texture is written as .dds
+     * @return the content, or null if the texture has no readable mip data at that level
+     */
+    public Content content(Texture.MipMap[] mips, TextureBase.Format format, int level, int width, int height, boolean compressed) {
+        if (level >= mips.length || mips[level].size <= 0) return null;
+        
+        MessageDigest digest = sha256();
+        digest.update(String.format("%s %dx%d %b", format, width, height, compressed).getBytes(StandardCharsets.US_ASCII));
+        for (int i = level; i < mips.length; i++) {
+            Texture.MipMap mip = mips[i];
+            if (mip.size <= 0) break;
+            digest.update(String.format("|%dx%d:%d|", mip.width, mip.height, mip.size).getBytes(StandardCharsets.US_ASCII));
+            digest.update(mip.dataBuffer());
+        }
+        return new Content(HexFormat.of().formatHex(digest.digest()), compressed);
+    }
+    
+    /**
+     * Check whether a texture is a copy of content that was already decoded.
+     * 
+     * @return true if the texture can be recorded as a copy instead of
+     *         decoded; false if the caller must decode it, and then call
+     *         {@link #decoded(Content)} if that succeeds
+     */
+    public boolean isCopy(Content content) {
+        return decoded.contains(content.hash());
+    }
+    
+    /**
+     * Note that a texture with this content was decoded, so later textures
+     * with the same content are copies. The caller must then write it, or
+     * {@link #release(Content)} it if writing fails.
+     */
+    public void decoded(Content content) {
+        decoded.add(content.hash());
+    }
+    
+    /**
+     * Note that the decoded texture with this content could not be written,
+     * so later textures with the same content are decoded again.
+     */
+    public void release(Content content) {
+        decoded.remove(content.hash());
+    }
+    
+    /**
+     * Note the file written for decoded content. The first file written for
+     * a content is the one its copies are linked to.
+     */
+    public void written(Content content, Path file) {
+        written.putIfAbsent(content.hash(), file);
+    }
+    
+    /**
+     * Record a file to be emitted as a copy of content written elsewhere.
+     */
+    public void addCopy(Content content, Path file) {
+        copies.add(new Copy(content.hash(), file));
+    }
+    
+    /**
+     * Create the files of all copies recorded so far, linking each to the
+     * file written for its content.
+     * 
+     * @return number of copies created and failed
+     */
+    public int[] linkCopies() {
+        int linked = 0;
+        int failed = 0;
+        long savedBytes = 0;
+        
+        for (Copy copy = copies.poll(); copy != null; copy = copies.poll()) {
+            Path original = written.get(copy.hash());
+            if (original == null) {
+                failed++;
+                System.err.println("  Failed: " + copy.file().getFileName() + " - the texture it duplicates was not written");
+                continue;
+            }
+            
+            try {
+                Files.deleteIfExists(copy.file());
+                try {
+                    Files.createLink(copy.file(), original);
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(original, copy.file(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                savedBytes += Files.size(original);
+                linked++;
+            } catch (IOException e) {
+                failed++;
+                System.err.println("  Failed: " + copy.file().getFileName() + " - " + e.getMessage());
+            }
+        }
+        
+        if (linked > 0) {
+            System.out.printf("Linked %d duplicate textures to identical extracted files (%.1f MB)%n",
+                linked, savedBytes / (1024.0 * 1024.0));
+        }
+        return new int[]{linked, failed};
+    }
+    
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package io.github.l2terrain.utils;
+
+import io.github.l2terrain.model.CompressedTexture;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes DXT1/DXT3/DXT5 block data to a .dds file without decoding it.
+ * 
+ * <p>The file is a plain DirectDraw Surface: a 4-byte magic, a 124-byte
+ * header with a FourCC pixel format, then every mip level in order.</p>
+ */
+public final class DdsWriter {
+    
+    private static final int DDS_MAGIC = 0x20534444; // "DDS "
+    private static final int HEADER_SIZE = 124;
+    private static final int PIXEL_FORMAT_SIZE = 32;
+    
+    private static final int DDSD_CAPS = 0x1;
+    private static final int DDSD_HEIGHT = 0x2;
+    private static final int DDSD_WIDTH = 0x4;
+    private static final int DDSD_PIXELFORMAT = 0x1000;
+    private static final int DDSD_MIPMAPCOUNT = 0x20000;
+    private static final int DDSD_LINEARSIZE = 0x80000;
+    
+    private static final int DDPF_FOURCC = 0x4;
+    
+    private static final int DDSCAPS_COMPLEX = 0x8;
+    private static final int DDSCAPS_TEXTURE = 0x1000;
+    private static final int DDSCAPS_MIPMAP = 0x400000;
+    
+    private DdsWriter() {
+        // Utility class - prevent instantiation
+    }
+    
+    /**
+     * Write a compressed texture, with all of its mip levels, to a .dds file.
+     * 
+     * @param texture the DXT block data
+     * @param output the file to write
+     * @throws IOException if writing fails
+     */
+    public static void write(CompressedTexture texture, Path output) throws IOException {
+        try (OutputStream out = Files.newOutputStream(output)) {
+            out.write(header(texture));
+            for (byte[] mip : texture.mips()) {
+                out.write(mip);
+            }
+        }
+    }
+    
+    /**
+     * Build the magic and DDS_HEADER for a texture.
+     */
+    static byte[] header(CompressedTexture texture) {
+        int mipCount = texture.mips().size();
+        boolean hasMips = mipCount > 1;
+        
+        ByteBuffer buf = ByteBuffer.allocate(4 + HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(DDS_MAGIC);
+        buf.putInt(HEADER_SIZE);
+        buf.putInt(DDSD_CAPS | DDSD_HEIGHT | DDSD_WIDTH | DDSD_PIXELFORMAT | DDSD_LINEARSIZE
+            | (hasMips ? DDSD_MIPMAPCOUNT : 0));
+        buf.putInt(texture.height());
+        buf.putInt(texture.width());
+        buf.putInt(texture.mips().get(0).length); // linear size of the top level
+        buf.putInt(0); // depth
+        buf.putInt(mipCount);
+        buf.position(buf.position() + 11 * 4); // reserved
+        
+        // DDS_PIXELFORMAT
+        buf.putInt(PIXEL_FORMAT_SIZE);
+        buf.putInt(DDPF_FOURCC);
+        buf.putInt(fourCC(texture));
+        buf.position(buf.position() + 5 * 4); // bit count and masks, unused for FourCC formats
+        
+        buf.putInt(DDSCAPS_TEXTURE | (hasMips ? DDSCAPS_COMPLEX | DDSCAPS_MIPMAP : 0));
+        // caps2-4 and reserved are zero
+        return buf.array();
+    }
+    
+    private static int fourCC(CompressedTexture texture) {
+        String code = switch (texture.format()) {
+            case DXT1 -> "DXT1";
+            case DXT3 -> "DXT3";
+            case DXT5 -> "DXT5";
+            default -> throw new IllegalArgumentException("Not a DXT format: " + texture.format());
+        };
+        return code.charAt(0) | code.charAt(1) << 8 | code.charAt(2) << 16 | code.charAt(3) << 24;
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.l2terrain.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Cheap fingerprint for telling whether a source file has changed since
+ * something was derived from it.
+ * 
+ * <p>The fingerprint combines the file's size, modification time and a CRC32C
+ * of its first and last 64 KB. Hashing the ends instead of the whole file
+ * keeps a check to a couple of small reads.</p>
+ */
+public final class FileFingerprint {
+    
+    /** Bytes hashed at each end of the file */
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    
+    private FileFingerprint() {
+        // Utility class - prevent instantiation
+    }
+    
+    /**
+     * Fingerprint a file.
+     * 
+     * @param file the file to fingerprint
+     * @return size, modification time and CRC as a short hex string
+     * @throws IOException if the file cannot be read
+     */
+    public static String of(Path file) throws IOException {
+        long size = Files.size(file);
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, SAMPLE_SIZE));
+            readFully(channel, buffer, 0);
+            crc.update(buffer.flip());
+            
+            if (size > SAMPLE_SIZE) {
+                buffer.clear();
+                readFully(channel, buffer, Math.max(SAMPLE_SIZE, size - SAMPLE_SIZE));
+                crc.update(buffer.flip());
+            }
+        }
+        
+        return String.format("%x-%x-%08x", size, modified, crc.getValue());
+    }
+    
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) break;
+        }
+    }
+}
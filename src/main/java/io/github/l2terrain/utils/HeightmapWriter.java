@@ -0,0 +1,90 @@
+package io.github.l2terrain.utils;
+
+import io.github.l2terrain.model.TerrainTile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferUShort;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes a heightmap tile as an 8-bit PNG preview, a 16-bit grayscale PNG
+ * and a 16-bit little-endian RAW file.
+ * 
+ * <p>All three are filled in one pass over the height data, directly into
+ * the backing arrays of the rasters and the RAW buffer. The 8-bit preview is
+ * normalised to the tile's own height range through a table computed once
+ * per tile, so no per-pixel floating point or colour conversion is done.</p>
+ */
+public final class HeightmapWriter {
+    
+    /**
+     * Stored byte for each gray level of the 8-bit preview. The preview used
+     * to be filled with setRGB, which converts sRGB gray to the linear gray of
+     * TYPE_BYTE_GRAY; storing the same converted values keeps the file
+     * unchanged.
+     */
+    private static final byte[] GRAY_LEVELS = grayLevels();
+    
+    private HeightmapWriter() {
+        // Utility class - prevent instantiation
+    }
+    
+    /**
+     * Write a heightmap tile in all formats.
+     * 
+     * @param tile the heightmap tile
+     * @param png8 8-bit PNG, normalised to the tile's height range
+     * @param png16 16-bit grayscale PNG of the original heights
+     * @param raw 16-bit little-endian RAW of the original heights
+     * @throws IOException if writing fails
+     */
+    public static void write(TerrainTile tile, Path png8, Path png16, Path raw) throws IOException {
+        int[] heights = tile.getHeightData();
+        int minHeight = tile.getMinHeight();
+        
+        BufferedImage preview = new BufferedImage(tile.getWidth(), tile.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        BufferedImage full = new BufferedImage(tile.getWidth(), tile.getHeight(), BufferedImage.TYPE_USHORT_GRAY);
+        byte[] previewData = ((DataBufferByte) preview.getRaster().getDataBuffer()).getData();
+        short[] fullData = ((DataBufferUShort) full.getRaster().getDataBuffer()).getData();
+        byte[] rawData = new byte[heights.length * 2];
+        byte[] levels = normalisation(minHeight, tile.getMaxHeight());
+        
+        for (int i = 0; i < heights.length; i++) {
+            int h = heights[i];
+            previewData[i] = levels[h - minHeight];
+            fullData[i] = (short) h;
+            rawData[i * 2] = (byte) h;
+            rawData[i * 2 + 1] = (byte) (h >> 8);
+        }
+        
+        ImageIO.write(preview, "png", png8.toFile());
+        ImageIO.write(full, "png", png16.toFile());
+        Files.write(raw, rawData);
+    }
+    
+    /**
+     * Build the preview byte for each height in [minHeight, maxHeight].
+     */
+    private static byte[] normalisation(int minHeight, int maxHeight) {
+        double range = Math.max(1, maxHeight - minHeight);
+        byte[] levels = new byte[maxHeight - minHeight + 1];
+        for (int i = 0; i < levels.length; i++) {
+            int gray = (int) ((i / range) * 255.0);
+            gray = Math.max(0, Math.min(255, gray));
+            levels[i] = GRAY_LEVELS[gray];
+        }
+        return levels;
+    }
+    
+    private static byte[] grayLevels() {
+        BufferedImage probe = new BufferedImage(256, 1, BufferedImage.TYPE_BYTE_GRAY);
+        for (int gray = 0; gray < 256; gray++) {
+            probe.setRGB(gray, 0, (gray << 16) | (gray << 8) | gray);
+        }
+        return ((DataBufferByte) probe.getRaster().getDataBuffer()).getData().clone();
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.l2terrain.utils;
+
+import net.shrimpworks.unreal.packages.Package;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * A single pass over XX_YY.unr map files, shared by several consumers.
+ * 
+ * <p>Map files are the largest packages, so each one is opened (decrypted and
+ * parsed) once and the open package is handed to every {@link Visitor} in
+ * turn, rather than each consumer opening it again.</p>
+ */
+public final class MapPass {
+    
+    /** Pattern to match map file names: XX_YY.unr */
+    private static final Pattern MAP_FILE_PATTERN = Pattern.compile("\\d+_\\d+\\.unr");
+    
+    /**
+     * Receives each opened map package.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * Process one map. The package is closed once all visitors have run.
+         * If the pass leaves more than one thread per map, the package is
+         * opened concurrent, so a visitor may read its objects from up to
+         * that many threads.
+         * 
+         * @param mapFile the XX_YY.unr file
+         * @param pkg the opened map package
+         * @param threads number of threads the visitor may use for this map
+         */
+        void visit(Path mapFile, Package pkg, int threads) throws IOException;
+    }
+    
+    private MapPass() {
+        // Utility class - prevent instantiation
+    }
+    
+    /**
+     * Find all XX_YY.unr map files in a directory.
+     */
+    public static List<Path> findMapFiles(Path mapsFolder) throws IOException {
+        List<Path> mapFiles = new ArrayList<>();
+        try (var stream = Files.list(mapsFolder)) {
+            stream.filter(p -> {
+                String name = p.getFileName().toString().toLowerCase();
+                return MAP_FILE_PATTERN.matcher(name).matches();
+            }).forEach(mapFiles::add);
+        }
+        return mapFiles;
+    }
+    
+    /**
+     * Open each map once and pass it to all visitors.
+     * 
+     * <p>A failure in one visitor is reported and does not stop the other
+     * visitors from seeing the same map.</p>
+     * 
+     * @param mapFiles the map files to process
+     * @param visitors consumers of each opened map
+     * @return number of maps that were opened successfully
+     */
+    public static int run(List<Path> mapFiles, List<Visitor> visitors) {
+        return run(mapFiles, visitors, 1);
+    }
+    
+    /**
+     * Open each map once and pass it to all visitors, processing up to
+     * {@code threads} maps at a time. Visitors must be thread-safe when more
+     * than one thread is used; the visitors for a single map always run in
+     * order on the same thread. When there are fewer maps than threads, the
+     * spare threads are shared out to the visitors of each map.
+     * 
+     * @param mapFiles the map files to process
+     * @param visitors consumers of each opened map
+     * @param threads number of worker threads
+     * @return number of maps that were opened successfully
+     */
+    public static int run(List<Path> mapFiles, List<Visitor> visitors, int threads) {
+        AtomicInteger processed = new AtomicInteger();
+        int mapThreads = ParallelExecutor.threadsPerItem(threads, mapFiles.size());
+        ParallelExecutor.forEach(threads, mapFiles, mapFile -> {
+            try (Package pkg = UnrealPackageUtils.openPackage(mapFile, mapThreads > 1)) {
+                for (Visitor visitor : visitors) {
+                    try {
+                        visitor.visit(mapFile, pkg, mapThreads);
+                    } catch (Exception e) {
+                        System.err.println("  Error processing " + mapFile.getFileName() + ": " + e.getMessage());
+                    }
+                }
+                
+                int done = processed.incrementAndGet();
+                if (done % 20 == 0) {
+                    System.out.println("  Processed " + done + "/" + mapFiles.size() + " maps");
+                }
+            } catch (Exception e) {
+                System.err.println("  Error processing " + mapFile.getFileName() + ": " + e.getMessage());
+            }
+        });
+        return processed.get();
+    }
+}
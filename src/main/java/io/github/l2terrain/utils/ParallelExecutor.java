@@ -0,0 +1,140 @@
+package io.github.l2terrain.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent per-package work on a bounded thread pool.
+ * 
+ * <p>The pool has a fixed number of workers and a small bounded queue. When
+ * the queue is full the submitting thread runs the task itself, so at most
+ * about two tasks per worker are ever waiting and memory use does not grow
+ * with the number of packages. With a single thread, tasks simply run in
+ * order on the calling thread.</p>
+ * 
+ * <p>Tasks are expected to handle and report their own errors; an exception
+ * escaping a task is rethrown once all tasks have finished.</p>
+ */
+public final class ParallelExecutor {
+    
+    /**
+     * Work to run for a single item.
+     */
+    @FunctionalInterface
+    public interface Task<T> {
+        void run(T item) throws Exception;
+    }
+    
+    private ParallelExecutor() {
+        // Utility class - prevent instantiation
+    }
+    
+    /**
+     * Get the default number of worker threads: the number of available processors.
+     */
+    public static int defaultThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+    
+    /**
+     * Split a thread budget between items that are processed at the same
+     * time by {@link #forEach}: the number of threads each item may use for
+     * its own work, so that all of them together stay within the budget.
+     * 
+     * @param threads number of worker threads for all items
+     * @param items number of items
+     * @return threads per item, at least 1
+     */
+    public static int threadsPerItem(int threads, int items) {
+        int workers = Math.max(1, Math.min(threads, items));
+        return Math.max(1, threads / workers);
+    }
+    
+    /**
+     * Run a task for each item, using up to {@code threads} worker threads,
+     * and wait for all of them to complete.
+     * 
+     * @param threads number of worker threads
+     * @param items items to process
+     * @param task work to run for each item
+     * @throws IllegalStateException if a task threw an exception
+     */
+    public static <T> void forEach(int threads, List<T> items, Task<T> task) {
+        if (threads <= 1 || items.size() <= 1) {
+            RuntimeException failure = null;
+            for (T item : items) {
+                try {
+                    runTask(task, item);
+                } catch (RuntimeException e) {
+                    if (failure == null) failure = e;
+                }
+            }
+            if (failure != null) throw failure;
+            return;
+        }
+        
+        int workers = Math.min(threads, items.size());
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(workers * 2),
+            new WorkerThreadFactory(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+        
+        try {
+            List<Future<?>> futures = new ArrayList<>(items.size());
+            for (T item : items) {
+                futures.add(executor.submit(() -> runTask(task, item)));
+            }
+            
+            RuntimeException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof RuntimeException re
+                            ? re
+                            : new IllegalStateException(e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for tasks", e);
+                }
+            }
+            if (failure != null) throw failure;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    private static <T> void runTask(Task<T> task, T item) {
+        try {
+            task.run(item);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+    
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+        
+        private final int pool = POOL_COUNT.incrementAndGet();
+        private final AtomicInteger count = new AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "l2terrain-" + pool + "-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
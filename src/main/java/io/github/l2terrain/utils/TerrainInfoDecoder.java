@@ -0,0 +1,304 @@
+package io.github.l2terrain.utils;
+
+import net.shrimpworks.unreal.packages.Package;
+import net.shrimpworks.unreal.packages.entities.Export;
+import net.shrimpworks.unreal.packages.entities.ObjectFlag;
+import net.shrimpworks.unreal.packages.entities.ObjectReference;
+import net.shrimpworks.unreal.packages.entities.properties.PropertyType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Decoder for the Layers and DecoLayers of a TerrainInfo actor.
+ * 
+ * <p>The generic property reader cannot read TerrainInfo, because its
+ * TerrainLayer and DecorationLayer structs are stored as nested tagged
+ * properties. This decoder walks the export's property tags once, reads the
+ * fields of those structs and skips everything else by its encoded size,
+ * so the cost is linear in the export size.</p>
+ * 
+ * <p>Only UE2 packages (version 220 and below, which includes Lineage 2)
+ * are supported; later versions decode to no layers.</p>
+ */
+public final class TerrainInfoDecoder {
+    
+    /** Last package version using UE2 property tags */
+    private static final int MAX_UE2_VERSION = 220;
+    
+    /** Byte sizes for the 3-bit size field of a property tag */
+    private static final int[] TAG_SIZES = {1, 2, 4, 12, 16};
+    
+    private TerrainInfoDecoder() {
+        // Utility class - prevent instantiation
+    }
+    
+    /**
+     * A terrain texture layer: a ground texture blended in by an alpha map.
+     */
+    public static class Layer {
+        /** Index within the Layers array */
+        public final int index;
+        public ObjectReference texture = ObjectReference.NULL;
+        public ObjectReference alphaMap = ObjectReference.NULL;
+        public float uScale = 1.0f;
+        public float vScale = 1.0f;
+        
+        Layer(int index) {
+            this.index = index;
+        }
+    }
+    
+    /**
+     * A decoration layer: static meshes scattered by a density map.
+     */
+    public static class DecoLayer {
+        /** Index within the DecoLayers array */
+        public final int index;
+        public int showOnTerrain;
+        public ObjectReference staticMesh = ObjectReference.NULL;
+        public ObjectReference densityMap = ObjectReference.NULL;
+        public ObjectReference scaleMap = ObjectReference.NULL;
+        public ObjectReference colorMap = ObjectReference.NULL;
+        
+        DecoLayer(int index) {
+            this.index = index;
+        }
+    }
+    
+    /**
+     * The decoded layers of one TerrainInfo, each list in index order.
+     */
+    public static class TerrainLayers {
+        public final List<Layer> layers = new ArrayList<>();
+        public final List<DecoLayer> decoLayers = new ArrayList<>();
+    }
+    
+    /**
+     * Decode the Layers and DecoLayers of a TerrainInfo export.
+     * 
+     * @param pkg the package containing the export
+     * @param export a TerrainInfo export
+     * @return the decoded layers
+     * @throws IllegalStateException if the property data is malformed
+     */
+    public static TerrainLayers decode(Package pkg, Export export) {
+        TerrainLayers result = new TerrainLayers();
+        if (pkg.version > MAX_UE2_VERSION) return result;
+        
+        ByteBuffer data = pkg.exportData(export).order(ByteOrder.LITTLE_ENDIAN);
+        skipObjectHeader(export, data);
+        
+        Tag tag = new Tag();
+        while (readTag(pkg, data, data.limit(), tag)) {
+            switch (tag.name) {
+                case "Layers" -> readStructs(pkg, data, tag, index -> {
+                    Layer layer = new Layer(index);
+                    result.layers.add(layer);
+                    return (field, fieldTag) -> readLayerField(pkg, layer, field, fieldTag, data);
+                });
+                case "DecoLayers" -> readStructs(pkg, data, tag, index -> {
+                    DecoLayer deco = new DecoLayer(index);
+                    result.decoLayers.add(deco);
+                    return (field, fieldTag) -> readDecoField(pkg, deco, field, fieldTag, data);
+                });
+                default -> { }
+            }
+            data.position(tag.end());
+        }
+        
+        result.layers.sort(Comparator.comparingInt(l -> l.index));
+        result.decoLayers.sort(Comparator.comparingInt(d -> d.index));
+        return result;
+    }
+    
+    private static void readLayerField(Package pkg, Layer layer, String field, Tag tag, ByteBuffer data) {
+        switch (field) {
+            case "Texture" -> layer.texture = readObject(pkg, tag, data);
+            case "AlphaMap" -> layer.alphaMap = readObject(pkg, tag, data);
+            case "UScale" -> layer.uScale = readFloat(tag, data, layer.uScale);
+            case "VScale" -> layer.vScale = readFloat(tag, data, layer.vScale);
+            default -> { }
+        }
+    }
+    
+    private static void readDecoField(Package pkg, DecoLayer deco, String field, Tag tag, ByteBuffer data) {
+        switch (field) {
+            case "ShowOnTerrain" -> {
+                if (tag.type == PropertyType.IntProperty) deco.showOnTerrain = data.getInt(tag.body);
+            }
+            case "StaticMesh" -> deco.staticMesh = readObject(pkg, tag, data);
+            case "DensityMap" -> deco.densityMap = readObject(pkg, tag, data);
+            case "ScaleMap" -> deco.scaleMap = readObject(pkg, tag, data);
+            case "ColorMap" -> deco.colorMap = readObject(pkg, tag, data);
+            default -> { }
+        }
+    }
+    
+    /**
+     * Receives the fields of one struct element.
+     */
+    @FunctionalInterface
+    private interface FieldReader {
+        void read(String field, Tag tag);
+    }
+    
+    /**
+     * Creates the reader for the struct element at an array index.
+     */
+    @FunctionalInterface
+    private interface ElementFactory {
+        FieldReader element(int index);
+    }
+    
+    /**
+     * Read the struct elements of an array property. A static array stores
+     * each element as its own StructProperty tag; a dynamic array stores a
+     * count followed by the elements.
+     */
+    private static void readStructs(Package pkg, ByteBuffer data, Tag tag, ElementFactory elements) {
+        int end = tag.end();
+        if (tag.type == PropertyType.StructProperty) {
+            readFields(pkg, data, tag.body, end, elements.element(tag.arrayIndex));
+        } else if (tag.type == PropertyType.ArrayProperty) {
+            data.position(tag.body);
+            int count = readIndex(data);
+            for (int i = 0; i < count && data.position() < end; i++) {
+                readFields(pkg, data, data.position(), end, elements.element(i));
+            }
+        }
+    }
+    
+    /**
+     * Read tagged fields from start until a None tag or the end of the
+     * enclosing property, leaving the buffer after the last field.
+     */
+    private static void readFields(Package pkg, ByteBuffer data, int start, int end, FieldReader fields) {
+        data.position(start);
+        Tag tag = new Tag();
+        while (readTag(pkg, data, end, tag)) {
+            fields.read(tag.name, tag);
+            data.position(tag.end());
+        }
+    }
+    
+    private static ObjectReference readObject(Package pkg, Tag tag, ByteBuffer data) {
+        if (tag.type != PropertyType.ObjectProperty) return ObjectReference.NULL;
+        data.position(tag.body);
+        return new ObjectReference(pkg, readIndex(data));
+    }
+    
+    private static float readFloat(Tag tag, ByteBuffer data, float fallback) {
+        return tag.type == PropertyType.FloatProperty ? data.getFloat(tag.body) : fallback;
+    }
+    
+    /**
+     * Header of a tagged property. Reused while walking a property list.
+     */
+    private static class Tag {
+        String name;
+        PropertyType type;
+        int size;
+        int arrayIndex;
+        /** Position of the property's value */
+        int body;
+        
+        int end() {
+            return body + size;
+        }
+    }
+    
+    /**
+     * Read a UE2 property tag, leaving the buffer at the start of its value.
+     * 
+     * @return false at the None tag ending the list, or at the end position
+     */
+    private static boolean readTag(Package pkg, ByteBuffer data, int end, Tag tag) {
+        if (data.position() >= end) return false;
+        
+        int nameIndex = readIndex(data);
+        if (nameIndex < 0 || nameIndex >= pkg.names.length) {
+            throw new IllegalStateException("Invalid property name index " + nameIndex + " at " + data.position());
+        }
+        String name = pkg.names[nameIndex].name;
+        if (name.equals("None")) return false;
+        
+        int info = data.get() & 0xFF;
+        PropertyType type = PropertyType.get((byte) (info & 0x0F));
+        int sizeCode = (info >> 4) & 0x07;
+        boolean arrayFlag = (info & 0x80) != 0;
+        
+        // struct name comes first, but is not needed here
+        if (type == PropertyType.StructProperty) {
+            readIndex(data);
+        }
+        
+        int size = switch (sizeCode) {
+            case 5 -> data.get() & 0xFF;
+            case 6 -> data.getShort() & 0xFFFF;
+            case 7 -> data.getInt();
+            default -> TAG_SIZES[sizeCode];
+        };
+        
+        int arrayIndex = 0;
+        if (arrayFlag && type != PropertyType.BoolProperty) {
+            arrayIndex = readArrayIndex(data);
+        }
+        
+        // booleans keep their value in the array flag and have no body
+        if (type == PropertyType.BoolProperty) size = 0;
+        
+        if (size < 0 || data.position() + size > end) {
+            throw new IllegalStateException("Property " + name + " overruns its container");
+        }
+        
+        tag.name = name;
+        tag.type = type;
+        tag.size = size;
+        tag.arrayIndex = arrayIndex;
+        tag.body = data.position();
+        return true;
+    }
+    
+    /**
+     * Skip the state frame preceding the properties of objects which have one.
+     */
+    private static void skipObjectHeader(Export export, ByteBuffer data) {
+        if (!export.flags().contains(ObjectFlag.HasStack)) return;
+        
+        int node = readIndex(data);
+        readIndex(data);
+        data.position(data.position() + 8 + 4);
+        if (node != 0) readIndex(data);
+    }
+    
+    /**
+     * Read an array index, stored in 1, 2 or 4 bytes depending on its top bits.
+     */
+    private static int readArrayIndex(ByteBuffer data) {
+        int b = data.get() & 0xFF;
+        if ((b & 0x80) == 0) return b;
+        if ((b & 0xC0) == 0x80) return ((b & 0x7F) << 8) | (data.get() & 0xFF);
+        return ((b & 0x3F) << 24) | ((data.get() & 0xFF) << 16) | ((data.get() & 0xFF) << 8) | (data.get() & 0xFF);
+    }
+    
+    /**
+     * Read a compact index (Unreal's variable-length signed integer).
+     */
+    private static int readIndex(ByteBuffer data) {
+        int b = data.get() & 0xFF;
+        boolean negative = (b & 0x80) != 0;
+        int result = b & 0x3F;
+        if ((b & 0x40) != 0) {
+            for (int shift = 6; shift < 32; shift += 7) {
+                b = data.get() & 0xFF;
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) break;
+            }
+        }
+        return negative ? -result : result;
+    }
+}
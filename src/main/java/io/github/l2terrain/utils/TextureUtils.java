@@ -1,8 +1,16 @@
 package io.github.l2terrain.utils;
 
+import net.shrimpworks.unreal.packages.entities.ExportedObject;
+import net.shrimpworks.unreal.packages.entities.objects.Texture;
+
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.nio.ByteBuffer;
+import java.io.IOException;
 import java.nio.ByteOrder;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Shared utility methods for texture extraction and decompression.
@@ -12,6 +20,9 @@ import java.nio.ByteOrder;
  */
 public final class TextureUtils {
     
+    /** Texture properties the extractors read, for selective object loading */
+    public static final Set<String> TEXTURE_PROPERTIES = Set.of("Format", "USize", "VSize", "Palette");
+    
     private TextureUtils() {
         // Utility class - prevent instantiation
     }
@@ -72,6 +83,94 @@ public final class TextureUtils {
     
     // ==================== Texture Data Location ====================
     
+    /**
+     * Parse a texture's mip headers once, so callers can pass them to the
+     * helpers below instead of each re-reading them from the package.
+     * 
+     * @param tex the texture
+     * @return the mip headers, or an empty array if they are malformed
+     */
+    public static Texture.MipMap[] mipMaps(Texture tex) {
+        try {
+            return tex.mipMaps();
+        } catch (RuntimeException e) {
+            return new Texture.MipMap[0];
+        }
+    }
+    
+    /**
+     * Read the first mip level's pixel data using the mip headers parsed by
+     * {@link Texture#mipMaps()}, so only that level is read from the package.
+     * 
+     * <p>The data is read without moving the package reader, and is not copied
+     * when the package is memory-mapped.</p>
+     * 
+     * <p>Returns null if the headers do not describe a level of at least
+     * {@code expectedSize} bytes inside the export, in which case callers fall
+     * back to scanning the raw export data.</p>
+     * 
+     * @param tex the texture
+     * @param obj the texture's export, used to sanity-check the mip offsets
+     * @param expectedSize the expected texture data size in bytes
+     * @return the mip 0 data (at least expectedSize bytes), or null
+     */
+    public static ByteBuffer readMipData(Texture tex, ExportedObject obj, int expectedSize) {
+        return readMipData(mipMaps(tex), obj, 0, expectedSize);
+    }
+    
+    /**
+     * Read the pixel data of one mip level using mip headers that were
+     * already parsed.
+     * 
+     * @param mips the texture's mip headers, from {@link #mipMaps(Texture)}
+     * @param obj the texture's export, used to sanity-check the mip offsets
+     * @param level the mip level, 0 being the full-size image
+     * @param expectedSize the expected data size of that level in bytes
+     * @return the level's data (at least expectedSize bytes), or null
+     * @see #readMipData(Texture, ExportedObject, int)
+     */
+    public static ByteBuffer readMipData(Texture.MipMap[] mips, ExportedObject obj, int level, int expectedSize) {
+        try {
+            if (level >= mips.length) return null;
+            
+            Texture.MipMap mip = mips[level];
+            int start = mip.widthOffset - mip.size;
+            if (mip.size < expectedSize || start < obj.pos || mip.widthOffset > obj.pos + obj.size) return null;
+            if (mip.width <= 0 || mip.height <= 0) return null;
+            
+            return mip.dataBuffer();
+        } catch (RuntimeException e) {
+            // malformed mip headers
+            return null;
+        }
+    }
+    
+    /**
+     * Choose which mip level to decode for a preview.
+     * 
+     * <p>Starts at {@code mipLevel} and, if {@code maxSize} is set, moves to
+     * smaller levels until both dimensions fit within it. Levels smaller than
+     * one 4x4 block are never chosen, and the texture's last level is the limit.</p>
+     * 
+     * @param mips the texture's mip headers, from {@link #mipMaps(Texture)}
+     * @param width full-size width (USize)
+     * @param height full-size height (VSize)
+     * @param mipLevel requested level, 0 for full size
+     * @param maxSize largest preview dimension in pixels, or 0 for no limit
+     * @return the level to decode; its size is {@code width >> level} by {@code height >> level}
+     */
+    public static int selectMipLevel(Texture.MipMap[] mips, int width, int height, int mipLevel, int maxSize) {
+        if (mipLevel <= 0 && (maxSize <= 0 || (width <= maxSize && height <= maxSize))) return 0;
+        
+        int mipCount = mips.length;
+        int level = 0;
+        while (level + 1 < mipCount && (width >> (level + 1)) >= 4 && (height >> (level + 1)) >= 4
+                && (level < mipLevel || (maxSize > 0 && ((width >> level) > maxSize || (height >> level) > maxSize)))) {
+            level++;
+        }
+        return level;
+    }
+    
     /**
      * Find the texture data offset by searching for the size indicator.
      * 
@@ -104,6 +203,33 @@ public final class TextureUtils {
     
     // ==================== DXT Decompression ====================
     
+    /** 5-bit channel to 8-bit, matching rgb565ToRgb: v * 255 / 31 */
+    private static final int[] EXPAND_5 = new int[32];
+    
+    /** 6-bit channel to 8-bit, matching rgb565ToRgb: v * 255 / 63 */
+    private static final int[] EXPAND_6 = new int[64];
+    
+    static {
+        for (int i = 0; i < EXPAND_5.length; i++) EXPAND_5[i] = i * 255 / 31;
+        for (int i = 0; i < EXPAND_6.length; i++) EXPAND_6[i] = i * 255 / 63;
+    }
+    
+    /** Textures with fewer pixels than this are always decoded on the calling thread (512x512) */
+    private static final int PARALLEL_DECODE_MIN_PIXELS = 512 * 512;
+    
+    /** Block rows per fork-join band (64 pixel rows) */
+    private static final int PARALLEL_DECODE_BAND_ROWS = 16;
+    
+    private static volatile boolean parallelDecode = false;
+    
+    /**
+     * Enable or disable splitting large DXT textures into row bands decoded
+     * on the common fork-join pool. Off by default.
+     */
+    public static void setParallelDecode(boolean parallel) {
+        parallelDecode = parallel;
+    }
+    
     /**
      * Decompress DXT1 texture data to an ARGB image.
      * 
@@ -113,125 +239,195 @@ public final class TextureUtils {
      * @return the decompressed image
      */
     public static BufferedImage decompressDXT1(byte[] dxtData, int width, int height) {
+        return decompressDXT1(dxtData, 0, width, height);
+    }
+    
+    /**
+     * Decompress DXT1 texture data, starting at an offset within a larger
+     * array (e.g. raw export data), to an ARGB image.
+     */
+    public static BufferedImage decompressDXT1(byte[] data, int offset, int width, int height) {
         BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        ByteBuffer buffer = ByteBuffer.wrap(dxtData).order(ByteOrder.LITTLE_ENDIAN);
+        decodeDXT1(data, offset, width, height, pixels(image));
+        return image;
+    }
+    
+    /**
+     * Decompress DXT3 texture data to an ARGB image.
+     * 
+     * @param dxtData the compressed DXT3 data
+     * @param width texture width (must be multiple of 4)
+     * @param height texture height (must be multiple of 4)
+     * @return the decompressed image
+     */
+    public static BufferedImage decompressDXT3(byte[] dxtData, int width, int height) {
+        return decompressDXT3(dxtData, 0, width, height);
+    }
+    
+    /**
+     * Decompress DXT3 texture data, starting at an offset within a larger
+     * array (e.g. raw export data), to an ARGB image.
+     */
+    public static BufferedImage decompressDXT3(byte[] data, int offset, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        decodeDXT3(data, offset, width, height, pixels(image));
+        return image;
+    }
+    
+    /**
+     * Decompress DXT5 texture data to an ARGB image.
+     * 
+     * @param dxtData the compressed DXT5 data
+     * @param width texture width (must be multiple of 4)
+     * @param height texture height (must be multiple of 4)
+     * @return the decompressed image
+     */
+    public static BufferedImage decompressDXT5(byte[] dxtData, int width, int height) {
+        return decompressDXT5(dxtData, 0, width, height);
+    }
+    
+    /**
+     * Decompress DXT5 texture data, starting at an offset within a larger
+     * array (e.g. raw export data), to an ARGB image.
+     */
+    public static BufferedImage decompressDXT5(byte[] data, int offset, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        decodeDXT5(data, offset, width, height, pixels(image));
+        return image;
+    }
+    
+    /**
+     * Decode DXT1 blocks into a caller-supplied ARGB pixel buffer.
+     * 
+     * <p>Pixels are written row by row with a stride of {@code width}, in the
+     * same layout as the data buffer of a {@code TYPE_INT_ARGB} image.</p>
+     * 
+     * @param data the compressed data
+     * @param offset offset of the first block within data
+     * @param width texture width (must be multiple of 4)
+     * @param height texture height (must be multiple of 4)
+     * @param pixels destination, at least width * height entries
+     */
+    public static void decodeDXT1(byte[] data, int offset, int width, int height, int[] pixels) {
+        checkBuffers(data, offset, (width / 4) * (height / 4) * 8, pixels, width, height);
+        decode(TextureUtils::decodeDXT1Rows, data, offset, width, height, pixels);
+    }
+    
+    /**
+     * Decode block rows [fromRow, toRow) of a DXT1 texture.
+     */
+    private static void decodeDXT1Rows(byte[] data, int offset, int width, int fromRow, int toRow, int[] pixels) {
+        int[] colors = new int[4];
         
         int blockWidth = width / 4;
-        int blockHeight = height / 4;
+        int pos = offset + fromRow * blockWidth * 8;
         
-        for (int by = 0; by < blockHeight; by++) {
+        for (int by = fromRow; by < toRow; by++) {
             for (int bx = 0; bx < blockWidth; bx++) {
-                int c0 = buffer.getShort() & 0xFFFF;
-                int c1 = buffer.getShort() & 0xFFFF;
-                int indices = buffer.getInt();
-                
-                int[] colors = new int[4];
-                colors[0] = rgb565ToArgb(c0);
-                colors[1] = rgb565ToArgb(c1);
+                int c0 = (data[pos] & 0xFF) | (data[pos + 1] & 0xFF) << 8;
+                int c1 = (data[pos + 2] & 0xFF) | (data[pos + 3] & 0xFF) << 8;
+                int indices = readIntLE(data, pos + 4);
+                pos += 8;
                 
+                int rgb0 = expand565(c0);
+                int rgb1 = expand565(c1);
+                colors[0] = 0xFF000000 | rgb0;
+                colors[1] = 0xFF000000 | rgb1;
                 if (c0 > c1) {
-                    colors[2] = interpolateColor(colors[0], colors[1], 2, 1);
-                    colors[3] = interpolateColor(colors[0], colors[1], 1, 2);
+                    colors[2] = 0xFF000000 | blend(rgb0, rgb1, 2, 1, 3);
+                    colors[3] = 0xFF000000 | blend(rgb0, rgb1, 1, 2, 3);
                 } else {
-                    colors[2] = interpolateColor(colors[0], colors[1], 1, 1);
+                    colors[2] = 0xFF000000 | blend(rgb0, rgb1, 1, 1, 2);
                     colors[3] = 0x00000000; // transparent
                 }
                 
-                for (int py = 0; py < 4; py++) {
-                    for (int px = 0; px < 4; px++) {
-                        int idx = (indices >> ((py * 4 + px) * 2)) & 0x3;
-                        int x = bx * 4 + px;
-                        int y = by * 4 + py;
-                        if (x < width && y < height) {
-                            image.setRGB(x, y, colors[idx]);
-                        }
-                    }
+                int row = (by * 4) * width + bx * 4;
+                for (int py = 0; py < 4; py++, row += width) {
+                    int bits = indices >>> (py * 8);
+                    pixels[row] = colors[bits & 0x3];
+                    pixels[row + 1] = colors[(bits >>> 2) & 0x3];
+                    pixels[row + 2] = colors[(bits >>> 4) & 0x3];
+                    pixels[row + 3] = colors[(bits >>> 6) & 0x3];
                 }
             }
         }
-        
-        return image;
     }
     
     /**
-     * Decompress DXT3 texture data to an ARGB image.
+     * Decode DXT3 blocks into a caller-supplied ARGB pixel buffer.
      * 
-     * @param dxtData the compressed DXT3 data
-     * @param width texture width (must be multiple of 4)
-     * @param height texture height (must be multiple of 4)
-     * @return the decompressed image
+     * @see #decodeDXT1(byte[], int, int, int, int[])
      */
-    public static BufferedImage decompressDXT3(byte[] dxtData, int width, int height) {
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        ByteBuffer buffer = ByteBuffer.wrap(dxtData).order(ByteOrder.LITTLE_ENDIAN);
+    public static void decodeDXT3(byte[] data, int offset, int width, int height, int[] pixels) {
+        checkBuffers(data, offset, (width / 4) * (height / 4) * 16, pixels, width, height);
+        decode(TextureUtils::decodeDXT3Rows, data, offset, width, height, pixels);
+    }
+    
+    /**
+     * Decode block rows [fromRow, toRow) of a DXT3 texture.
+     */
+    private static void decodeDXT3Rows(byte[] data, int offset, int width, int fromRow, int toRow, int[] pixels) {
+        int[] colors = new int[4];
         
         int blockWidth = width / 4;
-        int blockHeight = height / 4;
+        int pos = offset + fromRow * blockWidth * 16;
         
-        for (int by = 0; by < blockHeight; by++) {
+        for (int by = fromRow; by < toRow; by++) {
             for (int bx = 0; bx < blockWidth; bx++) {
                 // DXT3: 8 bytes explicit alpha, then 8 bytes DXT1 color block
-                long alphaBlock = buffer.getLong();
+                long alphaBlock = (readIntLE(data, pos) & 0xFFFFFFFFL) | ((long) readIntLE(data, pos + 4) << 32);
                 
-                int c0 = buffer.getShort() & 0xFFFF;
-                int c1 = buffer.getShort() & 0xFFFF;
-                int indices = buffer.getInt();
+                int c0 = (data[pos + 8] & 0xFF) | (data[pos + 9] & 0xFF) << 8;
+                int c1 = (data[pos + 10] & 0xFF) | (data[pos + 11] & 0xFF) << 8;
+                int indices = readIntLE(data, pos + 12);
+                pos += 16;
                 
-                int[] colors = new int[4];
-                colors[0] = rgb565ToRgb(c0);
-                colors[1] = rgb565ToRgb(c1);
-                colors[2] = interpolateColorNoAlpha(colors[0], colors[1], 2, 1);
-                colors[3] = interpolateColorNoAlpha(colors[0], colors[1], 1, 2);
+                fillColors(colors, c0, c1);
                 
-                for (int py = 0; py < 4; py++) {
+                int row = (by * 4) * width + bx * 4;
+                for (int py = 0; py < 4; py++, row += width) {
+                    int bits = indices >>> (py * 8);
+                    int alphas = (int) (alphaBlock >>> (py * 16));
                     for (int px = 0; px < 4; px++) {
-                        int idx = (indices >> ((py * 4 + px) * 2)) & 0x3;
-                        int alphaIdx = py * 4 + px;
-                        int alpha = (int) ((alphaBlock >> (alphaIdx * 4)) & 0xF) * 17; // Scale 0-15 to 0-255
-                        
-                        int x = bx * 4 + px;
-                        int y = by * 4 + py;
-                        if (x < width && y < height) {
-                            int argb = (alpha << 24) | colors[idx];
-                            image.setRGB(x, y, argb);
-                        }
+                        int alpha = ((alphas >>> (px * 4)) & 0xF) * 17; // Scale 0-15 to 0-255
+                        pixels[row + px] = (alpha << 24) | colors[(bits >>> (px * 2)) & 0x3];
                     }
                 }
             }
         }
-        
-        return image;
     }
     
     /**
-     * Decompress DXT5 texture data to an ARGB image.
+     * Decode DXT5 blocks into a caller-supplied ARGB pixel buffer.
      * 
-     * @param dxtData the compressed DXT5 data
-     * @param width texture width (must be multiple of 4)
-     * @param height texture height (must be multiple of 4)
-     * @return the decompressed image
+     * @see #decodeDXT1(byte[], int, int, int, int[])
      */
-    public static BufferedImage decompressDXT5(byte[] dxtData, int width, int height) {
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        ByteBuffer buffer = ByteBuffer.wrap(dxtData).order(ByteOrder.LITTLE_ENDIAN);
+    public static void decodeDXT5(byte[] data, int offset, int width, int height, int[] pixels) {
+        checkBuffers(data, offset, (width / 4) * (height / 4) * 16, pixels, width, height);
+        decode(TextureUtils::decodeDXT5Rows, data, offset, width, height, pixels);
+    }
+    
+    /**
+     * Decode block rows [fromRow, toRow) of a DXT5 texture.
+     */
+    private static void decodeDXT5Rows(byte[] data, int offset, int width, int fromRow, int toRow, int[] pixels) {
+        int[] colors = new int[4];
+        int[] alphas = new int[8];
         
         int blockWidth = width / 4;
-        int blockHeight = height / 4;
+        int pos = offset + fromRow * blockWidth * 16;
         
-        for (int by = 0; by < blockHeight; by++) {
+        for (int by = fromRow; by < toRow; by++) {
             for (int bx = 0; bx < blockWidth; bx++) {
                 // DXT5: 2 bytes alpha endpoints + 6 bytes alpha indices + 8 bytes color
-                int alpha0 = buffer.get() & 0xFF;
-                int alpha1 = buffer.get() & 0xFF;
+                int alpha0 = data[pos] & 0xFF;
+                int alpha1 = data[pos + 1] & 0xFF;
                 
-                // Read 6 bytes of alpha indices (48 bits for 16 pixels, 3 bits each)
-                long alphaIndices = 0;
-                for (int i = 0; i < 6; i++) {
-                    alphaIndices |= ((long)(buffer.get() & 0xFF)) << (i * 8);
-                }
+                // 6 bytes of alpha indices (48 bits for 16 pixels, 3 bits each)
+                long alphaIndices = ((data[pos + 2] & 0xFF) | (data[pos + 3] & 0xFF) << 8)
+                    | ((readIntLE(data, pos + 4) & 0xFFFFFFFFL) << 16);
                 
                 // Build alpha lookup table
-                int[] alphas = new int[8];
                 alphas[0] = alpha0;
                 alphas[1] = alpha1;
                 if (alpha0 > alpha1) {
@@ -246,32 +442,130 @@ public final class TextureUtils {
                     alphas[7] = 255;
                 }
                 
-                int c0 = buffer.getShort() & 0xFFFF;
-                int c1 = buffer.getShort() & 0xFFFF;
-                int indices = buffer.getInt();
+                int c0 = (data[pos + 8] & 0xFF) | (data[pos + 9] & 0xFF) << 8;
+                int c1 = (data[pos + 10] & 0xFF) | (data[pos + 11] & 0xFF) << 8;
+                int indices = readIntLE(data, pos + 12);
+                pos += 16;
                 
-                int[] colors = new int[4];
-                colors[0] = rgb565ToRgb(c0);
-                colors[1] = rgb565ToRgb(c1);
-                colors[2] = interpolateColorNoAlpha(colors[0], colors[1], 2, 1);
-                colors[3] = interpolateColorNoAlpha(colors[0], colors[1], 1, 2);
+                fillColors(colors, c0, c1);
                 
-                for (int py = 0; py < 4; py++) {
+                int row = (by * 4) * width + bx * 4;
+                for (int py = 0; py < 4; py++, row += width) {
+                    int bits = indices >>> (py * 8);
+                    int alphaBits = (int) (alphaIndices >>> (py * 12));
                     for (int px = 0; px < 4; px++) {
-                        int idx = (indices >> ((py * 4 + px) * 2)) & 0x3;
-                        int alphaIdx = (int) ((alphaIndices >> ((py * 4 + px) * 3)) & 0x7);
-                        
-                        int x = bx * 4 + px;
-                        int y = by * 4 + py;
-                        if (x < width && y < height) {
-                            image.setRGB(x, y, (alphas[alphaIdx] << 24) | colors[idx]);
-                        }
+                        pixels[row + px] = (alphas[(alphaBits >>> (px * 3)) & 0x7] << 24) | colors[(bits >>> (px * 2)) & 0x3];
                     }
                 }
             }
         }
+    }
+    
+    /**
+     * Decode all block rows, splitting them into bands across the fork-join
+     * pool when parallel decoding is enabled and the texture is large enough.
+     */
+    private static void decode(BlockRowDecoder decoder, byte[] data, int offset, int width, int height, int[] pixels) {
+        int blockRows = height / 4;
+        if (parallelDecode && width * height >= PARALLEL_DECODE_MIN_PIXELS && blockRows > PARALLEL_DECODE_BAND_ROWS) {
+            ForkJoinPool.commonPool().invoke(new DecodeBand(decoder, data, offset, width, 0, blockRows, pixels));
+        } else {
+            decoder.decode(data, offset, width, 0, blockRows, pixels);
+        }
+    }
+    
+    /**
+     * Decodes a range of block rows of one texture.
+     */
+    @FunctionalInterface
+    private interface BlockRowDecoder {
+        void decode(byte[] data, int offset, int width, int fromRow, int toRow, int[] pixels);
+    }
+    
+    /**
+     * Fork-join task that halves its block-row range until it is at most
+     * {@link #PARALLEL_DECODE_BAND_ROWS} rows. Bands write disjoint pixel rows.
+     */
+    private static class DecodeBand extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
         
-        return image;
+        private final BlockRowDecoder decoder;
+        private final byte[] data;
+        private final int offset;
+        private final int width;
+        private final int fromRow;
+        private final int toRow;
+        private final int[] pixels;
+        
+        DecodeBand(BlockRowDecoder decoder, byte[] data, int offset, int width, int fromRow, int toRow, int[] pixels) {
+            this.decoder = decoder;
+            this.data = data;
+            this.offset = offset;
+            this.width = width;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.pixels = pixels;
+        }
+        
+        @Override
+        protected void compute() {
+            if (toRow - fromRow <= PARALLEL_DECODE_BAND_ROWS) {
+                decoder.decode(data, offset, width, fromRow, toRow, pixels);
+                return;
+            }
+            int mid = (fromRow + toRow) >>> 1;
+            invokeAll(new DecodeBand(decoder, data, offset, width, fromRow, mid, pixels),
+                      new DecodeBand(decoder, data, offset, width, mid, toRow, pixels));
+        }
+    }
+    
+    /**
+     * Four-colour palette (no alpha) used by DXT3 and DXT5 colour blocks.
+     */
+    private static void fillColors(int[] colors, int c0, int c1) {
+        int rgb0 = expand565(c0);
+        int rgb1 = expand565(c1);
+        colors[0] = rgb0;
+        colors[1] = rgb1;
+        colors[2] = blend(rgb0, rgb1, 2, 1, 3);
+        colors[3] = blend(rgb0, rgb1, 1, 2, 3);
+    }
+    
+    /**
+     * Same result as {@link #rgb565ToRgb(int)}, via lookup tables.
+     */
+    private static int expand565(int color) {
+        return (EXPAND_5[(color >> 11) & 0x1F] << 16) | (EXPAND_6[(color >> 5) & 0x3F] << 8) | EXPAND_5[color & 0x1F];
+    }
+    
+    /**
+     * Same result as {@link #interpolateColorNoAlpha(int, int, int, int)}.
+     */
+    private static int blend(int c0, int c1, int w0, int w1, int total) {
+        int r = (((c0 >> 16) & 0xFF) * w0 + ((c1 >> 16) & 0xFF) * w1) / total;
+        int g = (((c0 >> 8) & 0xFF) * w0 + ((c1 >> 8) & 0xFF) * w1) / total;
+        int b = ((c0 & 0xFF) * w0 + (c1 & 0xFF) * w1) / total;
+        return (r << 16) | (g << 8) | b;
+    }
+    
+    private static int readIntLE(byte[] data, int pos) {
+        return (data[pos] & 0xFF) | (data[pos + 1] & 0xFF) << 8 | (data[pos + 2] & 0xFF) << 16 | (data[pos + 3] & 0xFF) << 24;
+    }
+    
+    private static void checkBuffers(byte[] data, int offset, int dataSize, int[] pixels, int width, int height) {
+        if (offset < 0 || data.length - offset < dataSize) {
+            throw new IllegalArgumentException("Compressed data too short: need " + dataSize + " bytes at offset " + offset);
+        }
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("Pixel buffer too small for " + width + "x" + height);
+        }
+    }
+    
+    /**
+     * Get the backing pixel array of a TYPE_INT_ARGB image.
+     */
+    private static int[] pixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
     }
     
     // ==================== Other Format Extraction ====================
@@ -289,6 +583,30 @@ public final class TextureUtils {
         int dataOffset = findTextureData(exportData, rgba8Size);
         if (dataOffset < 0) return null;
         
+        return decodeRGBA8(exportData, dataOffset, width, height);
+    }
+    
+    /**
+     * Extract RGBA8 texture data to an image, locating it via the mip headers.
+     * 
+     * @see #readMipData(Texture, ExportedObject, int)
+     */
+    public static BufferedImage extractRGBA8(Texture tex, ExportedObject obj, int width, int height) throws IOException {
+        return extractRGBA8(tex, mipMaps(tex), obj, 0, width, height);
+    }
+    
+    /**
+     * Extract one mip level of RGBA8 texture data from its parsed mip headers;
+     * width and height are that level's size.
+     */
+    public static BufferedImage extractRGBA8(Texture tex, Texture.MipMap[] mips, ExportedObject obj, int level, int width, int height) throws IOException {
+        ByteBuffer data = readMipData(mips, obj, level, width * height * 4);
+        if (data == null) return extractRGBA8(UnrealPackageUtils.toArray(tex.exportData()), width, height);
+        
+        return decodeRGBA8(UnrealPackageUtils.toArray(data), 0, width, height);
+    }
+    
+    private static BufferedImage decodeRGBA8(byte[] exportData, int dataOffset, int width, int height) {
         BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         
         for (int y = 0; y < height; y++) {
@@ -318,6 +636,30 @@ public final class TextureUtils {
         int dataOffset = findTextureData(exportData, p8Size);
         if (dataOffset < 0) return null;
         
+        return decodeP8(exportData, dataOffset, width, height);
+    }
+    
+    /**
+     * Extract P8 texture data to a grayscale image, locating it via the mip headers.
+     * 
+     * @see #readMipData(Texture, ExportedObject, int)
+     */
+    public static BufferedImage extractP8(Texture tex, ExportedObject obj, int width, int height) throws IOException {
+        return extractP8(tex, mipMaps(tex), obj, 0, width, height);
+    }
+    
+    /**
+     * Extract one mip level of P8 texture data from its parsed mip headers;
+     * width and height are that level's size.
+     */
+    public static BufferedImage extractP8(Texture tex, Texture.MipMap[] mips, ExportedObject obj, int level, int width, int height) throws IOException {
+        ByteBuffer data = readMipData(mips, obj, level, width * height);
+        if (data == null) return extractP8(UnrealPackageUtils.toArray(tex.exportData()), width, height);
+        
+        return decodeP8(UnrealPackageUtils.toArray(data), 0, width, height);
+    }
+    
+    private static BufferedImage decodeP8(byte[] exportData, int dataOffset, int width, int height) {
         BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
         
         for (int y = 0; y < height; y++) {
@@ -344,6 +686,31 @@ public final class TextureUtils {
         int dataOffset = findTextureData(exportData, g16Size);
         if (dataOffset < 0) return null;
         
+        return decodeG16(exportData, dataOffset, width, height);
+    }
+    
+    /**
+     * Extract G16 texture data to an image, locating it via the mip headers.
+     * 
+     * @see #readMipData(Texture, ExportedObject, int)
+     */
+    public static BufferedImage extractG16(Texture tex, ExportedObject obj, int width, int height) throws IOException {
+        return extractG16(tex, mipMaps(tex), obj, 0, width, height);
+    }
+    
+    /**
+     * Extract one mip level of G16 texture data from its parsed mip headers;
+     * width and height are that level's size.
+     */
+    public static BufferedImage extractG16(Texture tex, Texture.MipMap[] mips, ExportedObject obj, int level, int width, int height) throws IOException {
+        ByteBuffer data = readMipData(mips, obj, level, width * height * 2);
+        if (data == null) return extractG16(UnrealPackageUtils.toArray(tex.exportData()), width, height);
+        
+        return decodeG16(UnrealPackageUtils.toArray(data), 0, width, height);
+    }
+    
+    private static BufferedImage decodeG16(byte[] exportData, int dataOffset, int width, int height) {
+        int g16Size = width * height * 2;
         BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_USHORT_GRAY);
         ByteBuffer buffer = ByteBuffer.wrap(exportData, dataOffset, g16Size);
         buffer.order(ByteOrder.LITTLE_ENDIAN);
@@ -370,10 +737,27 @@ public final class TextureUtils {
         int dataOffset = findTextureData(exportData, dxt1Size);
         if (dataOffset < 0) return null;
         
-        byte[] dxtData = new byte[dxt1Size];
-        System.arraycopy(exportData, dataOffset, dxtData, 0, dxt1Size);
+        return decompressDXT1(exportData, dataOffset, width, height);
+    }
+    
+    /**
+     * Extract DXT1 texture data to an image, locating it via the mip headers.
+     * 
+     * @see #readMipData(Texture, ExportedObject, int)
+     */
+    public static BufferedImage extractDXT1(Texture tex, ExportedObject obj, int width, int height) throws IOException {
+        return extractDXT1(tex, mipMaps(tex), obj, 0, width, height);
+    }
+    
+    /**
+     * Extract one mip level of DXT1 texture data from its parsed mip headers;
+     * width and height are that level's size.
+     */
+    public static BufferedImage extractDXT1(Texture tex, Texture.MipMap[] mips, ExportedObject obj, int level, int width, int height) throws IOException {
+        ByteBuffer data = readMipData(mips, obj, level, (width / 4) * (height / 4) * 8);
+        if (data == null) return extractDXT1(UnrealPackageUtils.toArray(tex.exportData()), width, height);
         
-        return decompressDXT1(dxtData, width, height);
+        return decompressDXT1(UnrealPackageUtils.toArray(data), 0, width, height);
     }
     
     /**
@@ -389,10 +773,27 @@ public final class TextureUtils {
         int dataOffset = findTextureData(exportData, dxt3Size);
         if (dataOffset < 0) return null;
         
-        byte[] dxtData = new byte[dxt3Size];
-        System.arraycopy(exportData, dataOffset, dxtData, 0, dxt3Size);
+        return decompressDXT3(exportData, dataOffset, width, height);
+    }
+    
+    /**
+     * Extract DXT3 texture data to an image, locating it via the mip headers.
+     * 
+     * @see #readMipData(Texture, ExportedObject, int)
+     */
+    public static BufferedImage extractDXT3(Texture tex, ExportedObject obj, int width, int height) throws IOException {
+        return extractDXT3(tex, mipMaps(tex), obj, 0, width, height);
+    }
+    
+    /**
+     * Extract one mip level of DXT3 texture data from its parsed mip headers;
+     * width and height are that level's size.
+     */
+    public static BufferedImage extractDXT3(Texture tex, Texture.MipMap[] mips, ExportedObject obj, int level, int width, int height) throws IOException {
+        ByteBuffer data = readMipData(mips, obj, level, (width / 4) * (height / 4) * 16);
+        if (data == null) return extractDXT3(UnrealPackageUtils.toArray(tex.exportData()), width, height);
         
-        return decompressDXT3(dxtData, width, height);
+        return decompressDXT3(UnrealPackageUtils.toArray(data), 0, width, height);
     }
     
     /**
@@ -408,10 +809,27 @@ public final class TextureUtils {
         int dataOffset = findTextureData(exportData, dxt5Size);
         if (dataOffset < 0) return null;
         
-        byte[] dxtData = new byte[dxt5Size];
-        System.arraycopy(exportData, dataOffset, dxtData, 0, dxt5Size);
+        return decompressDXT5(exportData, dataOffset, width, height);
+    }
+    
+    /**
+     * Extract DXT5 texture data to an image, locating it via the mip headers.
+     * 
+     * @see #readMipData(Texture, ExportedObject, int)
+     */
+    public static BufferedImage extractDXT5(Texture tex, ExportedObject obj, int width, int height) throws IOException {
+        return extractDXT5(tex, mipMaps(tex), obj, 0, width, height);
+    }
+    
+    /**
+     * Extract one mip level of DXT5 texture data from its parsed mip headers;
+     * width and height are that level's size.
+     */
+    public static BufferedImage extractDXT5(Texture tex, Texture.MipMap[] mips, ExportedObject obj, int level, int width, int height) throws IOException {
+        ByteBuffer data = readMipData(mips, obj, level, (width / 4) * (height / 4) * 16);
+        if (data == null) return extractDXT5(UnrealPackageUtils.toArray(tex.exportData()), width, height);
         
-        return decompressDXT5(dxtData, width, height);
+        return decompressDXT5(UnrealPackageUtils.toArray(data), 0, width, height);
     }
     
     // ==================== Color Conversion Helpers ====================
@@ -1,99 +1,172 @@
 package io.github.l2terrain.utils;
 
+import io.github.l2terrain.crypto.DecryptedPackageCache;
+import io.github.l2terrain.crypto.L2DecryptingChannel;
+import io.github.l2terrain.crypto.L2Decryptor;
 import net.shrimpworks.unreal.packages.Package;
 import net.shrimpworks.unreal.packages.PackageReader;
-import net.shrimpworks.unreal.packages.entities.ExportedObject;
-import net.shrimpworks.unreal.packages.entities.objects.Object;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Utility methods for working with Unreal packages.
  * 
- * <p>Provides helper methods for accessing package internals via reflection
- * when the unreal-package-lib doesn't expose the needed functionality.</p>
+ * <p>Provides the shared entry point for opening L2 encrypted packages, and
+ * helpers for working with raw export data.</p>
  */
 public final class UnrealPackageUtils {
     
-    private static Field packageReaderField;
-    private static Field objectReaderField;
+    /** When true, packages are decrypted to a temp file rather than on read */
+    private static volatile boolean decryptToTempFile = false;
     
-    static {
-        try {
-            packageReaderField = Package.class.getDeclaredField("reader");
-            packageReaderField.setAccessible(true);
-            
-            objectReaderField = Object.class.getDeclaredField("reader");
-            objectReaderField.setAccessible(true);
-        } catch (NoSuchFieldException e) {
-            throw new RuntimeException("Failed to initialize reflection fields", e);
-        }
-    }
+    /** When true, packages are read from a memory-mapped buffer */
+    private static volatile boolean memoryMapped = false;
+    
+    /** When set, decrypted packages are kept in and reused from this cache */
+    private static volatile DecryptedPackageCache decryptedCache;
     
     private UnrealPackageUtils() {
         // Utility class - prevent instantiation
     }
     
     /**
-     * Get the PackageReader from a Package via reflection.
+     * Choose how {@link #openPackage(Path)} decrypts packages.
      * 
-     * @param pkg the package
-     * @return the package reader
-     * @throws IOException if reflection fails
+     * @param tempFile true to decrypt each package to a temp file first,
+     *                 false (default) to decrypt bytes as they are read
      */
-    public static PackageReader getPackageReader(Package pkg) throws IOException {
-        try {
-            return (PackageReader) packageReaderField.get(pkg);
-        } catch (IllegalAccessException e) {
-            throw new IOException("Failed to access PackageReader via reflection", e);
-        }
+    public static void setDecryptToTempFile(boolean tempFile) {
+        decryptToTempFile = tempFile;
     }
     
     /**
-     * Get the PackageReader from an Object via reflection.
+     * Choose whether {@link #openPackage(Path)} reads packages from memory-mapped
+     * buffers instead of through an 8 KB read window.
      * 
-     * @param obj the unreal object
-     * @return the package reader
-     * @throws IOException if reflection fails
+     * <p>Only cached copies are mapped, so this has no effect unless a
+     * {@linkplain #setDecryptedCache(DecryptedPackageCache) decrypted-package
+     * cache} is also set.</p>
+     * 
+     * @param mapped true to map each cached package into memory
      */
-    public static PackageReader getObjectReader(Object obj) throws IOException {
-        try {
-            return (PackageReader) objectReaderField.get(obj);
-        } catch (IllegalAccessException e) {
-            throw new IOException("Failed to access PackageReader via reflection", e);
-        }
+    public static void setMemoryMapped(boolean mapped) {
+        memoryMapped = mapped;
     }
     
     /**
-     * Read raw export data from a package.
+     * Reuse decrypted copies of packages kept in a cache directory across runs.
+     * Takes precedence over temp-file and on-read decryption.
      * 
-     * @param pkg the package
-     * @param obj the exported object
-     * @return the raw export data bytes
-     * @throws IOException if reading fails
+     * @param cache the cache to use, or null to always decrypt
      */
-    public static byte[] readExportData(Package pkg, ExportedObject obj) throws IOException {
-        PackageReader reader = getPackageReader(pkg);
-        reader.moveTo(obj.pos);
-        byte[] data = new byte[obj.size];
-        reader.readBytes(data, 0, obj.size);
-        return data;
+    public static void setDecryptedCache(DecryptedPackageCache cache) {
+        decryptedCache = cache;
+    }
+    
+    /**
+     * Open an L2 encrypted package for parsing.
+     * 
+     * <p>By default the package is read through an {@link L2DecryptingChannel},
+     * so no decrypted copy is written to disk. If temp-file decryption is
+     * enabled, the package is decrypted to a temp file which is deleted when
+     * the returned package is closed.</p>
+     * 
+     * <p>If a decrypted-package cache is set, the cached copy is read instead,
+     * and is only decrypted when it is missing or stale. With memory mapping
+     * enabled the cached copy is mapped read-only, and the reader works
+     * directly on the mapped bytes. The mapped pages stay backed by the
+     * cache file, so the OS can drop them under memory pressure; the mapping
+     * itself is released once the closed package is garbage collected.</p>
+     * 
+     * @param file the encrypted package file
+     * @return the opened package; the caller must close it
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a valid L2 encrypted package
+     */
+    public static Package openPackage(Path file) throws IOException {
+        return openPackage(file, false);
+    }
+    
+    /**
+     * Open an L2 encrypted package for parsing, optionally so that its
+     * objects can be read from several threads at once.
+     * 
+     * <p>A concurrent package gives each thread its own read position (see
+     * {@link PackageReader#setConcurrent(boolean)}). Every backend reads
+     * without locking: mapped packages through views of the mapping, the
+     * others through positional reads of their channel.</p>
+     * 
+     * @param file the encrypted package file
+     * @param concurrent true if the package will be shared between threads
+     * @return the opened package; the caller must close it
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a valid L2 encrypted package
+     * @see #openPackage(Path)
+     */
+    public static Package openPackage(Path file, boolean concurrent) throws IOException {
+        PackageReader reader;
+        DecryptedPackageCache cache = decryptedCache;
+        if (cache != null) {
+            Path decrypted = cache.acquire(file);
+            try {
+                if (memoryMapped) {
+                    try (FileChannel channel = FileChannel.open(decrypted, StandardOpenOption.READ)) {
+                        reader = new PackageReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                    }
+                } else {
+                    reader = new PackageReader(FileChannel.open(decrypted, StandardOpenOption.READ));
+                }
+            } finally {
+                // an open channel or mapping keeps reading the copy even if it is evicted later
+                cache.release(decrypted);
+            }
+        } else {
+            reader = decryptToTempFile
+                ? new PackageReader(decryptToTemp(file))
+                : new PackageReader(L2DecryptingChannel.open(file));
+        }
+        
+        try {
+            reader.setConcurrent(concurrent);
+            return new Package(reader);
+        } catch (RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+    
+    private static FileChannel decryptToTemp(Path file) throws IOException {
+        Path tempFile = Files.createTempFile("l2pkg_", ".tmp");
+        try {
+            L2Decryptor.decryptFile(file, tempFile);
+            return FileChannel.open(tempFile, StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
     }
     
     /**
-     * Read raw export data from an unreal object.
+     * Get the bytes of a buffer (such as {@link Package#exportData}) as an array.
      * 
-     * @param unrealObj the unreal object (e.g., Texture)
-     * @param exportObj the exported object with position/size info
-     * @return the raw export data bytes
-     * @throws IOException if reading fails
+     * <p>A heap buffer that spans its whole backing array is returned without
+     * copying; anything else, such as a view of a mapped package, is copied.</p>
+     * 
+     * @param buffer the data, from its position to its limit
+     * @return the data bytes
      */
-    public static byte[] readExportData(Object unrealObj, ExportedObject exportObj) throws IOException {
-        PackageReader reader = getObjectReader(unrealObj);
-        reader.moveTo(exportObj.pos);
-        byte[] data = new byte[exportObj.size];
-        reader.readBytes(data, 0, exportObj.size);
+    public static byte[] toArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.limit() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(buffer.position(), data);
         return data;
     }
 }
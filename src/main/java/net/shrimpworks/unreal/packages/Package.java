@@ -2,13 +2,16 @@ package net.shrimpworks.unreal.packages;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -42,6 +45,7 @@ import net.shrimpworks.unreal.packages.entities.properties.IntegerProperty;
 import net.shrimpworks.unreal.packages.entities.properties.NameProperty;
 import net.shrimpworks.unreal.packages.entities.properties.ObjectProperty;
 import net.shrimpworks.unreal.packages.entities.properties.Property;
+import net.shrimpworks.unreal.packages.entities.properties.PropertyList;
 import net.shrimpworks.unreal.packages.entities.properties.PropertyType;
 import net.shrimpworks.unreal.packages.entities.properties.StringProperty;
 import net.shrimpworks.unreal.packages.entities.properties.StructProperty;
@@ -164,9 +168,11 @@ public class Package implements Closeable {
 	public final ExportedField[] fields;
 
 	// cache of already-parsed/read objects, simply keyed by file position
-	private final WeakHashMap<Integer, Object> loadedObjects;
+	private final Map<Integer, Object> loadedObjects;
 	// cache of reusable object references
-	private final WeakHashMap<Integer, ObjectReference> objectReferences;
+	private final Map<Integer, ObjectReference> objectReferences;
+	// exports by class name, built on first use
+	private volatile Map<String, List<Export>> exportsByClass;
 
 	public Package(Path packageFile) throws IOException {
 		this(new PackageReader(packageFile));
@@ -179,9 +185,9 @@ public class Package implements Closeable {
 
 		if (reader.readInt() != PKG_SIGNATURE) throw new IllegalArgumentException("Package does not seem to be an Unreal package");
 
-		// internal caches
-		this.loadedObjects = new WeakHashMap<>();
-		this.objectReferences = new WeakHashMap<>();
+		// internal caches, synchronized for readers shared between threads
+		this.loadedObjects = Collections.synchronizedMap(new WeakHashMap<>());
+		this.objectReferences = Collections.synchronizedMap(new WeakHashMap<>());
 
 		this.version = reader.readShort();
 		reader.version = version;
@@ -332,39 +338,116 @@ public class Package implements Closeable {
 
 	/**
 	 * Convenience to get all exported elements by a known class name.
+	 * <p>
+	 * Only exports whose class is imported from another package are
+	 * matched; see {@link #exportsOfClass(String)} to include classes
+	 * defined within this package.
 	 *
 	 * @param className class to search for
 	 * @return matching exports
 	 */
 	public Collection<Export> exportsByClassName(String className) {
-		Set<Export> exports = new HashSet<>();
-		for (Export ex : this.exports) {
-			Named type = ex.classIndex.get();
-			if (type instanceof Import && ((Import)type).name.name.equals(className)) {
-				exports.add(ex);
-			}
+		List<Export> exports = new ArrayList<>();
+		for (Export ex : exportsOfClass(className)) {
+			if (ex.classIndex.index < 0) exports.add(ex);
 		}
 		return exports;
 	}
 
 	/**
 	 * Convenience to get all exported objects by a known class name.
+	 * <p>
+	 * Only objects whose class is imported from another package are
+	 * matched; see {@link #objectsOfClass(String)} to include classes
+	 * defined within this package.
 	 *
 	 * @param className class to search for
 	 * @return matching objects
 	 */
 	public Collection<ExportedObject> objectsByClassName(String className) {
-		Set<ExportedObject> exports = new HashSet<>();
-		for (ExportedObject ex : this.objects) {
-			if (ex == null) continue;
-			Named type = ex.classIndex.get();
-			if (type instanceof Import && ((Import)type).name.name.equals(className)) {
-				exports.add(ex);
-			}
+		List<ExportedObject> exports = new ArrayList<>();
+		for (ExportedObject ex : objectsOfClass(className)) {
+			if (ex.classIndex.index < 0) exports.add(ex);
 		}
 		return exports;
 	}
 
+	/**
+	 * Get all exports of a class, in export table order.
+	 * <p>
+	 * This matches exports where <code>export.classIndex.get().name().name</code>
+	 * equals the class name. The first lookup builds an index of all exports
+	 * by class; later lookups only cost a map lookup.
+	 *
+	 * @param className class name, eg. "Texture"
+	 * @return matching exports, possibly empty
+	 */
+	public List<Export> exportsOfClass(String className) {
+		return exportsByClass().getOrDefault(className, List.of());
+	}
+
+	/**
+	 * Get all exported objects of a class, in export table order.
+	 *
+	 * @param className class name, eg. "StaticMeshActor"
+	 * @return matching objects, possibly empty
+	 * @see #exportsOfClass(String)
+	 */
+	public List<ExportedObject> objectsOfClass(String className) {
+		List<Export> exports = exportsOfClass(className);
+		List<ExportedObject> objects = new ArrayList<>(exports.size());
+		for (Export ex : exports) {
+			if (this.objects[ex.index] != null) objects.add(this.objects[ex.index]);
+		}
+		return objects;
+	}
+
+	private Map<String, List<Export>> exportsByClass() {
+		Map<String, List<Export>> index = exportsByClass;
+		if (index != null) return index;
+
+		synchronized (this) {
+			if (exportsByClass == null) exportsByClass = buildClassIndex();
+			return exportsByClass;
+		}
+	}
+
+	/**
+	 * Group exports by class reference first, so each distinct class name is
+	 * resolved only once rather than once per export.
+	 */
+	private Map<String, List<Export>> buildClassIndex() {
+		// class references range from -imports.length to exports.length
+		int offset = imports.length;
+		int[] counts = new int[imports.length + exports.length + 1];
+		for (Export ex : exports) {
+			int ref = ex.classIndex.index + offset;
+			if (ref >= 0 && ref < counts.length) counts[ref]++;
+		}
+
+		Export[][] byRef = new Export[counts.length][];
+		int[] filled = new int[counts.length];
+		for (Export ex : exports) {
+			int ref = ex.classIndex.index + offset;
+			if (ref < 0 || ref >= counts.length) continue;
+			if (byRef[ref] == null) byRef[ref] = new Export[counts[ref]];
+			byRef[ref][filled[ref]++] = ex;
+		}
+
+		Map<String, List<Export>> index = new HashMap<>();
+		for (Export[] group : byRef) {
+			if (group == null) continue;
+			index.merge(group[0].classIndex.get().name().name, List.of(group), (a, b) -> {
+				// the same class name through more than one reference
+				List<Export> merged = new ArrayList<>(a);
+				merged.addAll(b);
+				merged.sort((x, y) -> Integer.compare(x.index, y.index));
+				return List.copyOf(merged);
+			});
+		}
+		return index;
+	}
+
 	/**
 	 * Convenience to get an object by an object reference.
 	 *
@@ -410,6 +493,36 @@ public class Package implements Closeable {
 		return exportedObject;
 	}
 
+	/**
+	 * Get the raw serialised bytes of an export, as a little-endian buffer
+	 * of <code>export.size</code> bytes.
+	 * <p>
+	 * For memory-mapped packages this is a read-only view of the package,
+	 * and nothing is copied. Otherwise the bytes are read into a new buffer.
+	 * Either way, no reader position is changed, so this is safe to call
+	 * alongside other reads of a concurrent package.
+	 *
+	 * @param export the export to read
+	 * @return export data
+	 * @see PackageReader#slice(long, int)
+	 */
+	public ByteBuffer exportData(Export export) {
+		if (export.size <= 0) return ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+		return reader.slice(export.pos, export.size);
+	}
+
+	/**
+	 * Get the raw serialised bytes of an export as a stream, read from the
+	 * package as the stream is consumed.
+	 *
+	 * @param export the export to read
+	 * @return export data
+	 * @see PackageReader#stream(long, int)
+	 */
+	public InputStream exportStream(Export export) {
+		return reader.stream(export.pos, Math.max(0, export.size));
+	}
+
 	// --- primary data table readers
 
 	/**
@@ -572,6 +685,16 @@ public class Package implements Closeable {
 		);
 	}
 
+	/**
+	 * Whether this package's objects may be read from several threads at once.
+	 *
+	 * @return true if the package reader is concurrent
+	 * @see PackageReader#setConcurrent(boolean)
+	 */
+	public boolean isConcurrent() {
+		return reader.isConcurrent();
+	}
+
 	/**
 	 * Create an Object for the provided export.
 	 * <p>
@@ -581,6 +704,11 @@ public class Package implements Closeable {
 	 * <p>
 	 * The specific object implementation should expose methods to obtain
 	 * instances of the object data itself in appropriate formats.
+	 * <p>
+	 * When the package reader is concurrent (see
+	 * {@link PackageReader#setConcurrent(boolean)}), this may be called from
+	 * several threads at once. If two threads read the same export, both
+	 * receive the instance that was cached first.
 	 *
 	 * @param export the export to get an object for
 	 * @return a new object instance
@@ -589,6 +717,44 @@ public class Package implements Closeable {
 		Object existing = loadedObjects.get(export.pos);
 		if (existing != null) return existing;
 
+		Object newObject = readObject(export, null);
+		if (newObject == null) return null;
+
+		existing = loadedObjects.putIfAbsent(export.pos, newObject);
+
+		return existing != null ? existing : newObject;
+	}
+
+	/**
+	 * Get an object for an export, decoding only the named properties.
+	 * <p>
+	 * The bodies of all other properties are skipped over by their encoded
+	 * size, without being decoded or allocated. This suits callers which
+	 * look at a handful of properties of many objects, such as texture
+	 * dimensions or actor placement.
+	 * <p>
+	 * If the export has already been read in full, the cached object is
+	 * returned. Otherwise the partial object returned is not cached.
+	 *
+	 * @param export        the export to get an object for
+	 * @param propertyNames names of the properties to decode
+	 * @return an object instance holding only the requested properties
+	 */
+	public Object object(ExportedObject export, Set<String> propertyNames) {
+		Object existing = loadedObjects.get(export.pos);
+		if (existing != null) return existing;
+
+		return readObject(export, propertyNames);
+	}
+
+	/**
+	 * Read an export's object header and properties, and create the object.
+	 *
+	 * @param export the export to read
+	 * @param wanted names of the properties to decode, or null for all
+	 * @return a new object instance, or null if the export has no class
+	 */
+	private Object readObject(ExportedObject export, Set<String> wanted) {
 		if (export.size <= 0) throw new IllegalStateException(String.format("Export %s has no associated object data!", export.name));
 
 		if (export.classIndex.index == 0) return null;
@@ -608,58 +774,40 @@ public class Package implements Closeable {
 			reader.readIndex(); // skipping: netIndex
 		}
 
-		List<Property> properties = readProperties();
+		List<Property> properties = readProperties(wanted);
 
 		// keep track of how long the properties were, so we can potentially continue reading object data from this point
 		int postPropsPosition = reader.currentPosition();
-		Object newObject = ObjectFactory.newInstance(this, reader, export, header, properties, postPropsPosition);
-
-		loadedObjects.put(export.pos, newObject);
-
-		return newObject;
+		return ObjectFactory.newInstance(this, reader, export, header, properties, postPropsPosition);
 	}
 
-	private List<Property> readProperties() {
-		List<Property> properties = new ArrayList<>();
+	private List<Property> readProperties(Set<String> wanted) {
+		PropertyList properties = new PropertyList(this);
 		for (int i = 0; i < MAX_PROPERTIES; i++) {
-			Property p = readProperty();
-
-			if (p.name.equals(Name.NONE)) break;
-			else {
-				if (p instanceof ArrayProperty.ArrayItem && !properties.isEmpty()) {
-				/*
-				  Array handling:
-				  We should magically know that if this property is part of an array, the previous
-				  property is either an array we need to add to, or the previous property is
-				  actually the first item of the array. In the second case, we need to replace
-				  it with a new array property.
-				 */
-				Property lastProperty = properties.get(properties.size() - 1);
-					if (lastProperty instanceof ArrayProperty) {
-						properties.remove(lastProperty);
-						properties.add(((ArrayProperty)lastProperty).add((ArrayProperty.ArrayItem)p));
-					} else if (lastProperty.name.equals(p.name)) {
-						properties.remove(lastProperty);
-						properties.add(new ArrayProperty(((ArrayProperty.ArrayItem)p).property));
-					} else properties.add(((ArrayProperty.ArrayItem)p).property);
-				} else properties.add(p);
-			}
+			Property p = readProperty(wanted);
+
+			if (p == null) properties.skipped();
+			else if (p.name.equals(Name.NONE)) break;
+			else properties.add(p);
 		}
-		return properties;
+		return properties.properties();
 	}
 
 	/**
 	 * Utility method to read an individual object property.
 	 *
-	 * @return property of the appropriate type
+	 * @param wanted names of the properties to decode, or null for all
+	 * @return property of the appropriate type, or null if it was skipped
 	 */
-	private Property readProperty() {
+	private Property readProperty(Set<String> wanted) {
 		Name name = name(reader.readNameIndex());
 
 		// the end - don't read or process anything beyond here
 		if (name.equals(Name.NONE)) return new NameProperty(this, name, name);
 
-		if (version > 220) return readPropertyUE3(name);
+		boolean skip = wanted != null && !wanted.contains(name.name);
+
+		if (version > 220) return readPropertyUE3(name, skip);
 
 		byte propInfo = reader.readByte();
 
@@ -678,7 +826,7 @@ public class Package implements Closeable {
 		if (propType == PropertyType.StructProperty) {
 			int structIdx = reader.readIndex();
 			structType = structIdx >= 0 ? StructProperty.StructType.get(name(structIdx)) : null;
-			if (structType == null) {
+			if (structType == null && !skip) {
 				throw new IllegalStateException(String.format("Unknown struct type index %d for property %s", structIdx, name.name));
 			}
 		}
@@ -697,6 +845,11 @@ public class Package implements Closeable {
 			arrayIndex = reader.readByte();
 		}
 
+		if (skip) {
+			reader.skip(size);
+			return null;
+		}
+
 		Property property = createProperty(name, propType, structType, size, boolOrArrayFlag);
 
 		/*
@@ -710,7 +863,7 @@ public class Package implements Closeable {
 		return property;
 	}
 
-	private Property readPropertyUE3(Name name) {
+	private Property readPropertyUE3(Name name, boolean skip) {
 		Name typeName = name(reader.readNameIndex());
 		PropertyType propType = PropertyType.get(typeName);
 
@@ -729,6 +882,11 @@ public class Package implements Closeable {
 
 		boolean booleanFlag = propType == PropertyType.BoolProperty && reader.readInt() > 0;
 
+		if (skip) {
+			reader.skip(size);
+			return null;
+		}
+
 		Property property = createProperty(name, propType, structType, size, booleanFlag);
 
 		/*
@@ -2,6 +2,7 @@ package net.shrimpworks.unreal.packages;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
@@ -37,10 +38,34 @@ public class PackageReader implements Closeable {
 
 	public final ReaderStats stats = new ReaderStats();
 
+	/**
+	 * A channel which can read at an absolute position without using or
+	 * changing its own position, like {@link FileChannel#read(ByteBuffer, long)}.
+	 * <p>
+	 * Readers over such channels can fill per-thread cursors without locking
+	 * the channel.
+	 */
+	public interface PositionalChannel extends SeekableByteChannel {
+
+		/**
+		 * Read bytes starting at the given position. The channel's own
+		 * position is not changed.
+		 *
+		 * @param dst      buffer to read into
+		 * @param position channel position to start reading from
+		 * @return number of bytes read, or -1 at the end of the channel
+		 * @throws IOException if reading fails
+		 */
+		int read(ByteBuffer dst, long position) throws IOException;
+	}
+
 	private final SeekableByteChannel pgkChannel;
-	private final ByteBuffer buffer;
+	// the whole package in mapped mode, otherwise null
+	private final ByteBuffer packageBuffer;
 
-	private SeekableByteChannel channel;
+	// the only cursor, unless the reader is concurrent
+	private final Cursor shared;
+	private ThreadLocal<Cursor> cursors = null;
 
 	protected int version = 0;
 	protected CompressedChunk[] chunks = null;
@@ -48,6 +73,9 @@ public class PackageReader implements Closeable {
 	private final boolean cacheChunks;
 	private final Map<CompressedChunk, ChunkChannel> chunkCache = new HashMap<>();
 
+	// true when buffer holds the entire package, and there is no channel to read from
+	private final boolean mapped;
+
 	/**
 	 * Creates a new package reader for an Unreal package, represented by the
 	 * provided {@link FileChannel}.
@@ -61,10 +89,32 @@ public class PackageReader implements Closeable {
 	 */
 	public PackageReader(SeekableByteChannel pkgChannel, boolean cacheChunks) {
 		this.pgkChannel = pkgChannel;
-		this.channel = pkgChannel;
+		this.packageBuffer = null;
 
 		this.cacheChunks = cacheChunks;
-		this.buffer = ByteBuffer.allocateDirect(READ_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+		this.mapped = false;
+		this.shared = newCursor();
+	}
+
+	/**
+	 * Creates a new package reader over a buffer holding the entire content of
+	 * an Unreal package, typically a {@link java.nio.MappedByteBuffer}.
+	 * <p>
+	 * In this mode, there is no read window to manage. Moving within the
+	 * package simply sets the buffer position, and {@link #slice(long, int)}
+	 * returns views of the package bytes without copying them.
+	 * <p>
+	 * Compressed (chunked) packages are not supported in this mode.
+	 *
+	 * @param packageBuffer unreal package bytes, from position 0 to the limit
+	 */
+	public PackageReader(ByteBuffer packageBuffer) {
+		this.pgkChannel = null;
+		this.packageBuffer = packageBuffer.duplicate().clear().order(ByteOrder.LITTLE_ENDIAN);
+
+		this.cacheChunks = false;
+		this.mapped = true;
+		this.shared = newCursor();
 	}
 
 	public PackageReader(Path packageFile, boolean cacheChunks) throws IOException {
@@ -81,10 +131,45 @@ public class PackageReader implements Closeable {
 
 	@Override
 	public void close() throws IOException {
-		if (channel != null && channel.isOpen()) channel.close();
+		// drop the per-thread cursors, so that threads outliving this reader
+		// do not keep their read buffers or views of the mapping
+		ThreadLocal<Cursor> local = cursors;
+		if (local != null) {
+			local.remove();
+			cursors = null;
+		}
+
+		if (mapped) return;
 		pgkChannel.close();
 	}
 
+	/**
+	 * Give each thread its own read position within the package, so that
+	 * several threads may read from this reader at the same time.
+	 * <p>
+	 * Every thread gets a separate cursor, holding its own read buffer and
+	 * position. Mapped readers give each cursor its own view of the package
+	 * buffer, other readers fill cursor buffers with positional reads of the
+	 * package channel (see {@link PositionalChannel}). A thread starts at
+	 * position 0, so reads should always begin with {@link #moveTo(long)}.
+	 * <p>
+	 * This must be set before the reader is shared with other threads.
+	 * Compressed (chunked) packages are not supported in this mode, and
+	 * {@link #stats} are only approximate.
+	 *
+	 * @param concurrent true to use per-thread cursors
+	 */
+	public void setConcurrent(boolean concurrent) {
+		if (concurrent && chunks != null) {
+			throw new UnsupportedOperationException("Compressed packages can not be read concurrently");
+		}
+		this.cursors = concurrent ? ThreadLocal.withInitial(this::newCursor) : null;
+	}
+
+	public boolean isConcurrent() {
+		return cursors != null;
+	}
+
 	/**
 	 * Calculate a hash of the file.
 	 *
@@ -95,9 +180,16 @@ public class PackageReader implements Closeable {
 		try {
 			MessageDigest md = MessageDigest.getInstance(alg);
 
-			pgkChannel.position(0);
-			buffer.clear();
-			while (pgkChannel.read(buffer) > 0) {
+			if (mapped) {
+				md.update(packageBuffer.duplicate().clear());
+				return bytesToHex(md.digest()).toLowerCase();
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER);
+			long pos = 0;
+			int read;
+			while ((read = readAt(pgkChannel, buffer, pos)) > 0) {
+				pos += read;
 				buffer.flip();
 				md.update(buffer);
 				buffer.clear();
@@ -110,6 +202,8 @@ public class PackageReader implements Closeable {
 	}
 
 	public void setChunks(CompressedChunk[] chunks) {
+		if (mapped) throw new UnsupportedOperationException("Compressed packages can not be read from a mapped buffer");
+		if (isConcurrent()) throw new UnsupportedOperationException("Compressed packages can not be read concurrently");
 		this.chunks = chunks;
 		this.stats.chunkCount = chunks.length;
 	}
@@ -122,6 +216,7 @@ public class PackageReader implements Closeable {
 	 * @return file size
 	 */
 	public long size() {
+		if (mapped) return packageBuffer.capacity();
 		try {
 			return pgkChannel.size();
 		} catch (IOException e) {
@@ -138,7 +233,7 @@ public class PackageReader implements Closeable {
 	 * @return read position in buffer
 	 */
 	public int position() {
-		return buffer.position();
+		return cursor().buffer.position();
 	}
 
 	/**
@@ -149,14 +244,12 @@ public class PackageReader implements Closeable {
 	 * @return read position in package
 	 */
 	public int currentPosition() {
-		try {
-			if (channel instanceof ChunkChannel) {
-				return ((ChunkChannel)channel).chunk.uncompressedOffset + (int)(channel.position() - buffer.remaining());
-			} else {
-				return (int)(channel.position() - buffer.remaining());
-			}
-		} catch (IOException e) {
-			throw new IllegalStateException("Could not determine current file position");
+		Cursor cursor = cursor();
+		if (mapped) return cursor.buffer.position();
+		if (cursor.channel instanceof ChunkChannel) {
+			return ((ChunkChannel)cursor.channel).chunk.uncompressedOffset + (int)(cursor.channelPos - cursor.buffer.remaining());
+		} else {
+			return (int)(cursor.channelPos - cursor.buffer.remaining());
 		}
 	}
 
@@ -174,7 +267,18 @@ public class PackageReader implements Closeable {
 	}
 
 	private void moveTo(long pos, boolean nonChunked, boolean keepChannel) {
-		if (channel != pgkChannel && nonChunked) channel = pgkChannel;
+		Cursor cursor = cursor();
+		if (mapped) {
+			if (pos < 0 || pos > cursor.buffer.limit()) {
+				throw new IllegalStateException("Could not move to position " + pos + " within package file");
+			}
+			cursor.buffer.position((int)pos);
+			stats.moveToCount++;
+			stats.fillBufferAvoidedCount++;
+			return;
+		}
+
+		if (cursor.channel != pgkChannel && nonChunked) cursor.channel = pgkChannel;
 
 		AtomicLong movePos = new AtomicLong(pos);
 
@@ -186,8 +290,8 @@ public class PackageReader implements Closeable {
 													.findFirst();
 			chunk.ifPresent(compressedChunk -> {
 				// we're already in the chunk, no need to re-read it
-				if (!(channel instanceof ChunkChannel) || ((ChunkChannel)channel).chunk != compressedChunk) {
-					channel = loadChunk(compressedChunk, cacheChunks);
+				if (!(cursor.channel instanceof ChunkChannel) || ((ChunkChannel)cursor.channel).chunk != compressedChunk) {
+					cursor.channel = loadChunk(compressedChunk, cacheChunks);
 				}
 
 				movePos.set(pos - compressedChunk.uncompressedOffset);
@@ -195,11 +299,11 @@ public class PackageReader implements Closeable {
 		}
 
 		try {
-			channel.position(movePos.get());
+			cursor.channelPos = movePos.get();
 
-			buffer.clear();
-			channel.read(buffer);
-			buffer.flip();
+			cursor.buffer.clear();
+			cursor.fill();
+			cursor.buffer.flip();
 		} catch (IOException e) {
 			throw new IllegalStateException("Could not move to position " + pos + " within package file", e);
 		} finally {
@@ -215,15 +319,36 @@ public class PackageReader implements Closeable {
 	 */
 	public void moveRelative(int amount) {
 		try {
+			Cursor cursor = cursor();
+			if (mapped) {
+				moveTo(cursor.buffer.position() + (long)amount, false, true);
+				return;
+			}
+
 			// note: subtract remaining because the current position within the channel will align with the end of the last buffer fill
-			moveTo(channel.position() - buffer.remaining() + amount, false, true);
-		} catch (IOException e) {
-			throw new IllegalStateException("Could not move by " + amount + " bytes within channel", e);
+			moveTo(cursor.channelPos - cursor.buffer.remaining() + amount, false, true);
 		} finally {
 			stats.moveRelativeCount++;
 		}
 	}
 
+	/**
+	 * Skip over a number of bytes without reading them. Within the current
+	 * buffer this only advances its position; otherwise it behaves like
+	 * {@link #moveRelative(int)}.
+	 *
+	 * @param length number of bytes to skip
+	 */
+	public void skip(int length) {
+		ByteBuffer buffer = cursor().buffer;
+		if (length >= 0 && length <= buffer.remaining()) {
+			buffer.position(buffer.position() + length);
+			return;
+		}
+
+		moveRelative(length);
+	}
+
 	/**
 	 * Ensure at least the specified number of bytes are available for
 	 * subsequent read operations.
@@ -232,6 +357,7 @@ public class PackageReader implements Closeable {
 	 */
 	public void ensureRemaining(int minRemaining) {
 		try {
+			ByteBuffer buffer = cursor().buffer;
 			if (buffer.capacity() < minRemaining) {
 				throw new IllegalArgumentException("Impossible to fill buffer with " + minRemaining + " bytes");
 			}
@@ -247,10 +373,17 @@ public class PackageReader implements Closeable {
 	 * currently unread bytes in the buffer.
 	 */
 	public void fillBuffer() {
+		if (mapped) {
+			// the whole package is already in the buffer
+			stats.fillBufferAvoidedCount++;
+			return;
+		}
+
 		try {
-			buffer.compact();
-			channel.read(buffer);
-			buffer.flip();
+			Cursor cursor = cursor();
+			cursor.buffer.compact();
+			cursor.fill();
+			cursor.buffer.flip();
 		} catch (IOException e) {
 			throw new IllegalStateException("Could not read from package file", e);
 		} finally {
@@ -267,7 +400,7 @@ public class PackageReader implements Closeable {
 	 * @return a byte
 	 */
 	public byte readByte() {
-		return buffer.get();
+		return cursor().buffer.get();
 	}
 
 	/**
@@ -277,7 +410,7 @@ public class PackageReader implements Closeable {
 	 * @return a signed short
 	 */
 	public short readShort() {
-		return buffer.getShort();
+		return cursor().buffer.getShort();
 	}
 
 	/**
@@ -287,7 +420,7 @@ public class PackageReader implements Closeable {
 	 * @return a singed integer
 	 */
 	public int readInt() {
-		return buffer.getInt();
+		return cursor().buffer.getInt();
 	}
 
 	/**
@@ -297,7 +430,7 @@ public class PackageReader implements Closeable {
 	 * @return a singed long
 	 */
 	public long readLong() {
-		return buffer.getLong();
+		return cursor().buffer.getLong();
 	}
 
 	/**
@@ -307,7 +440,7 @@ public class PackageReader implements Closeable {
 	 * @return a signed float
 	 */
 	public float readFloat() {
-		return buffer.getFloat();
+		return cursor().buffer.getFloat();
 	}
 
 	/**
@@ -321,6 +454,15 @@ public class PackageReader implements Closeable {
 	 * @return number of bytes read
 	 */
 	public int readBytes(byte[] dest, int offset, int length) {
+		ByteBuffer buffer = cursor().buffer;
+		if (mapped) {
+			int read = Math.min(buffer.remaining(), length);
+			buffer.get(dest, offset, read);
+			// the windowed reader would have refilled its buffer roughly once per READ_BUFFER bytes
+			stats.fillBufferAvoidedCount += (read + READ_BUFFER - 1) / READ_BUFFER;
+			return read;
+		}
+
 		int start = currentPosition(); //buffer.remaining();
 
 		int read = 0;
@@ -334,6 +476,70 @@ public class PackageReader implements Closeable {
 		return currentPosition() - start;
 	}
 
+	/**
+	 * Get a little-endian view of <code>length</code> bytes of the package,
+	 * starting at <code>pos</code>.
+	 * <p>
+	 * For mapped readers this does not copy any data, and the view is
+	 * read-only. Otherwise the bytes are read into a new heap buffer which
+	 * belongs to the caller, with a single positional read that does not
+	 * change the reader position (compressed packages are read through the
+	 * current cursor instead, which does not preserve its position).
+	 *
+	 * @param pos    position in file
+	 * @param length number of bytes
+	 * @return package bytes
+	 */
+	public ByteBuffer slice(long pos, int length) {
+		if (mapped) {
+			if (pos < 0 || pos + length > packageBuffer.limit()) {
+				throw new IllegalArgumentException("Slice " + pos + "+" + length + " is outside package bounds");
+			}
+			return packageBuffer.duplicate()
+								.position((int)pos)
+								.limit((int)pos + length)
+								.slice()
+								.asReadOnlyBuffer()
+								.order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		byte[] data = new byte[length];
+		if (chunks != null) {
+			moveTo(pos);
+			readBytes(data, 0, length);
+		} else {
+			ByteBuffer dest = ByteBuffer.wrap(data);
+			try {
+				while (dest.hasRemaining()) {
+					if (readAt(pgkChannel, dest, pos + dest.position()) < 0) {
+						throw new IllegalArgumentException("Slice " + pos + "+" + length + " is outside package bounds");
+					}
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not read " + length + " bytes at position " + pos, e);
+			}
+		}
+		return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Get a stream of <code>length</code> bytes of the package, starting at
+	 * <code>pos</code>.
+	 * <p>
+	 * The bytes are read as the stream is consumed, using positional reads
+	 * which do not change the reader position, so the whole range is never
+	 * held in memory. Mapped readers stream straight from the mapped buffer.
+	 * Compressed packages are read with {@link #slice(long, int)} up front.
+	 *
+	 * @param pos    position in file
+	 * @param length number of bytes
+	 * @return package bytes
+	 */
+	public InputStream stream(long pos, int length) {
+		if (mapped || chunks != null) return new BufferInputStream(slice(pos, length));
+		return new ChannelInputStream(pgkChannel, pos, length);
+	}
+
 	/**
 	 * Reads a "Compact Index" integer value.
 	 * <p>
@@ -350,6 +556,7 @@ public class PackageReader implements Closeable {
 
 		if (version > 178) return readInt();
 
+		ByteBuffer buffer = cursor().buffer;
 		boolean negative = false;
 		int num = 0;
 		int len = 6;
@@ -434,7 +641,7 @@ public class PackageReader implements Closeable {
 			if (readLen != 0) {
 				byte[] val = new byte[readLen];
 				ensureRemaining(readLen);
-				buffer.get(val);
+				cursor().buffer.get(val);
 				string = new String(val, charset);
 			}
 		}
@@ -444,6 +651,33 @@ public class PackageReader implements Closeable {
 
 	// -- private helpers
 
+	private Cursor cursor() {
+		ThreadLocal<Cursor> local = cursors;
+		return local == null ? shared : local.get();
+	}
+
+	private Cursor newCursor() {
+		return mapped
+			? new Cursor(packageBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN), null)
+			: new Cursor(ByteBuffer.allocateDirect(READ_BUFFER).order(ByteOrder.LITTLE_ENDIAN), pgkChannel);
+	}
+
+	/**
+	 * Read from a channel at the given position, without relying on the
+	 * channel's own position where possible. Channels that are neither a
+	 * {@link FileChannel} nor a {@link PositionalChannel} are positioned and
+	 * read while holding their lock.
+	 */
+	private static int readAt(SeekableByteChannel channel, ByteBuffer dest, long pos) throws IOException {
+		if (channel instanceof FileChannel) return ((FileChannel)channel).read(dest, pos);
+		if (channel instanceof PositionalChannel) return ((PositionalChannel)channel).read(dest, pos);
+
+		synchronized (channel) {
+			channel.position(pos);
+			return channel.read(dest);
+		}
+	}
+
 	private static String bytesToHex(byte[] bytes) {
 		char[] hexChars = new char[bytes.length * 2];
 		for (int i = 0; i < bytes.length; i++) {
@@ -496,12 +730,119 @@ public class PackageReader implements Closeable {
 		}
 	}
 
+	/**
+	 * A read buffer and its position within the package.
+	 */
+	private static class Cursor {
+
+		private final ByteBuffer buffer;
+		private SeekableByteChannel channel;
+		// channel position of the end of the buffered bytes
+		private long channelPos;
+
+		private Cursor(ByteBuffer buffer, SeekableByteChannel channel) {
+			this.buffer = buffer;
+			this.channel = channel;
+		}
+
+		/**
+		 * Read more bytes from the channel into the buffer.
+		 */
+		private void fill() throws IOException {
+			int read = readAt(channel, buffer, channelPos);
+			if (read > 0) channelPos += read;
+		}
+	}
+
+	/**
+	 * Streams the remaining bytes of a buffer.
+	 */
+	private static class BufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		private BufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) return 0;
+			if (!buffer.hasRemaining()) return -1;
+			int read = Math.min(len, buffer.remaining());
+			buffer.get(b, off, read);
+			return read;
+		}
+
+		@Override
+		public long skip(long n) {
+			int skipped = (int)Math.max(0, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + skipped);
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+
+	/**
+	 * Streams a range of a channel with positional reads.
+	 */
+	private static class ChannelInputStream extends InputStream {
+
+		private final SeekableByteChannel channel;
+		private final long end;
+		private long pos;
+
+		private ChannelInputStream(SeekableByteChannel channel, long pos, int length) {
+			this.channel = channel;
+			this.pos = pos;
+			this.end = pos + length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) return 0;
+			if (pos >= end) return -1;
+			int read = readAt(channel, ByteBuffer.wrap(b, off, (int)Math.min(len, end - pos)), pos);
+			if (read < 0) return -1;
+			pos += read;
+			return read;
+		}
+
+		@Override
+		public long skip(long n) {
+			long skipped = Math.max(0, Math.min(n, end - pos));
+			pos += skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			return (int)(end - pos);
+		}
+	}
+
 	public static class ReaderStats {
 
 		public int moveToCount;
 		public int moveRelativeCount;
 		public int ensureRemainingCount;
 		public int fillBufferCount;
+		public int fillBufferAvoidedCount;
 		public int chunkCount;
 		public int chunkLoadCount;
 		public int chunkFetchCount;
@@ -509,8 +850,8 @@ public class PackageReader implements Closeable {
 		@Override
 		public String toString() {
 			return String.format(
-				"ReaderStats [moveToCount=%s, moveRelativeCount=%s, ensureRemainingCount=%s, fillBufferCount=%s, chunkCount=%s, chunkLoadCount=%s, chunkFetchCount=%s]",
-				moveToCount, moveRelativeCount, ensureRemainingCount, fillBufferCount, chunkCount, chunkLoadCount, chunkFetchCount);
+				"ReaderStats [moveToCount=%s, moveRelativeCount=%s, ensureRemainingCount=%s, fillBufferCount=%s, fillBufferAvoidedCount=%s, chunkCount=%s, chunkLoadCount=%s, chunkFetchCount=%s]",
+				moveToCount, moveRelativeCount, ensureRemainingCount, fillBufferCount, fillBufferAvoidedCount, chunkCount, chunkLoadCount, chunkFetchCount);
 		}
 	}
 }
@@ -1,5 +1,6 @@
 package net.shrimpworks.unreal.packages.entities.objects;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
 
 import net.shrimpworks.unreal.packages.Package;
@@ -37,6 +38,16 @@ public class Object {
 		this.dataStart = dataStart;
 	}
 
+	/**
+	 * Get the raw serialised bytes of this object's export.
+	 *
+	 * @return export data
+	 * @see Package#exportData(Export)
+	 */
+	public ByteBuffer exportData() {
+		return pkg.exportData(export);
+	}
+
 	/**
 	 * Convenience to obtain a property by name.
 	 *
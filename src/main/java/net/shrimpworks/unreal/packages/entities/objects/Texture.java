@@ -1,5 +1,6 @@
 package net.shrimpworks.unreal.packages.entities.objects;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
 
 import net.shrimpworks.unreal.packages.Package;
@@ -71,6 +72,22 @@ public class Texture extends TextureBase<Texture.MipMap> {
 		return data;
 	}
 
+	/**
+	 * Get a mip level's image data without reading it through the shared
+	 * reader position.
+	 *
+	 * @param mip the mip level
+	 * @return image data, a view of the package when it is memory-mapped
+	 * @see PackageReader#slice(long, int)
+	 */
+	protected ByteBuffer readImageBuffer(MipMap mip) {
+		if (mip == null) throw new IllegalArgumentException("MipMap must be non-null must be provided");
+		if (mip.size <= 0) throw new IllegalArgumentException("MipMap size must be greater than zero");
+		if (mip.widthOffset <= 0) throw new IllegalArgumentException("MipMap offset must be greater than zero");
+
+		return reader.slice(mip.widthOffset - mip.size, mip.size);
+	}
+
 	public class MipMap extends MipMapBase {
 
 		public final int widthOffset;
@@ -86,6 +103,23 @@ public class Texture extends TextureBase<Texture.MipMap> {
 			this.bitsHeight = bitsHeight;
 		}
 
+		/**
+		 * Read the raw image data of this mip level, as stored in the package.
+		 */
+		public byte[] data() {
+			return readImage(this);
+		}
+
+		/**
+		 * Get this level's image data as a little-endian buffer, without
+		 * copying it when the package is memory-mapped.
+		 *
+		 * @return image data
+		 */
+		public ByteBuffer dataBuffer() {
+			return readImageBuffer(this);
+		}
+
 		@Override
 		public String toString() {
 			return String.format("MipMap [size=%s, width=%s, height=%s, bitsWidth=%s, bitsHeight=%s]",
@@ -0,0 +1,82 @@
+package net.shrimpworks.unreal.packages.entities.properties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.shrimpworks.unreal.packages.Package;
+
+/**
+ * Collects an object's properties in the order they are read, assembling
+ * array elements into {@link ArrayProperty} values as they arrive.
+ * <p>
+ * Array elements after the first are read as {@link ArrayProperty.ArrayItem}s
+ * which directly follow the first element (or the previous item). The first
+ * such item replaces the preceding property of the same name with an
+ * {@link ArrayProperty}, and later items are appended to that array's
+ * backing list in place, so collecting an array of n elements is O(n).
+ */
+public class PropertyList {
+
+	private final Package pkg;
+	private final List<Property> properties = new ArrayList<>();
+
+	/** The most recently added property, or null after a gap */
+	private Property last;
+
+	/** The array currently being collected, and its backing list */
+	private ArrayProperty array;
+	private List<Property> arrayValues;
+
+	public PropertyList(Package pkg) {
+		this.pkg = pkg;
+	}
+
+	/**
+	 * Add the next property read. Array items are unwrapped and added to the
+	 * array they belong to.
+	 *
+	 * @param property the property read
+	 */
+	public void add(Property property) {
+		if (!(property instanceof ArrayProperty.ArrayItem item)) {
+			append(property);
+			return;
+		}
+
+		if (last != null && last == array && last.name.equals(item.name)) {
+			arrayValues.add(Math.min(item.index, arrayValues.size()), item.property);
+		} else if (last != null && last.name.equals(item.name)) {
+			arrayValues = new ArrayList<>();
+			if (last instanceof ArrayProperty existing) arrayValues.addAll(existing.values);
+			else arrayValues.add(last);
+			arrayValues.add(Math.min(item.index, arrayValues.size()), item.property);
+
+			array = new ArrayProperty(pkg, item.name, arrayValues);
+			properties.set(properties.size() - 1, array);
+			last = array;
+		} else {
+			// nothing to continue, so keep the element as a plain property
+			append(item.property);
+		}
+	}
+
+	/**
+	 * Note that a property was skipped without being read, so a following
+	 * array item does not continue anything collected so far.
+	 */
+	public void skipped() {
+		last = null;
+	}
+
+	/**
+	 * @return the properties collected
+	 */
+	public List<Property> properties() {
+		return properties;
+	}
+
+	private void append(Property property) {
+		properties.add(property);
+		last = property;
+	}
+}